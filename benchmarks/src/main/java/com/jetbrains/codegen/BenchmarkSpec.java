@@ -0,0 +1,43 @@
+package com.jetbrains.codegen;
+
+import io.swagger.codegen.InlineModelResolver;
+import io.swagger.models.Swagger;
+import io.swagger.parser.SwaggerParser;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The spec the benchmarks run on: a TeamCity-shaped spec with entities, their lists and locators, nested references
+ * and cycles between models, and the operations of the REST API on them.
+ */
+public final class BenchmarkSpec {
+    public static final String RESOURCE = "/teamcity-swagger.json";
+
+    private BenchmarkSpec() {
+    }
+
+    /**
+     * Parses the spec and flattens its inline models, as the generator does before generating models.
+     */
+    public static Swagger read() {
+        String json;
+        try (InputStream in = BenchmarkSpec.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing benchmark spec " + RESOURCE);
+            }
+            json = IOUtils.toString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read benchmark spec " + RESOURCE, e);
+        }
+
+        Swagger swagger = new SwaggerParser().parse(json);
+        if (swagger == null) {
+            throw new IllegalStateException("Could not parse benchmark spec " + RESOURCE);
+        }
+        new InlineModelResolver().flatten(swagger);
+        return swagger;
+    }
+}
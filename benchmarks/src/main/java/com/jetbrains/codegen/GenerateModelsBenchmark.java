@@ -0,0 +1,74 @@
+package com.jetbrains.codegen;
+
+import io.swagger.codegen.ClientOptInput;
+import io.swagger.codegen.ClientOpts;
+import io.swagger.codegen.CodegenConfig;
+import io.swagger.codegen.CodegenConfigLoader;
+import io.swagger.models.Swagger;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing and rendering of all models of the spec by {@link TeamCityGenerator}, without APIs and supporting files.
+ * <p>
+ * Every invocation generates from a fresh copy of the spec with a fresh codegen, since generation modifies both.
+ * Files are written into the same directory by every invocation, so after the first one they are only compared with
+ * the existing ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+@State(Scope.Benchmark)
+public class GenerateModelsBenchmark {
+    @Param({"teamcity-kotlin", "teamcity-python", "teamcity-docs"})
+    public String lang;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Swagger spec;
+    private File outputDir;
+    private TeamCityGenerator generator;
+
+    @Setup(Level.Trial)
+    public void readSpec() throws IOException {
+        spec = BenchmarkSpec.read();
+        outputDir = Files.createTempDirectory("generate-models-benchmark").toFile();
+        // only models are generated if the models to generate are given, an empty value stands for all of them
+        System.setProperty("models", "");
+        System.setProperty("modelTests", "false");
+        System.setProperty("modelDocs", "false");
+    }
+
+    @Setup(Level.Invocation)
+    public void createGenerator() {
+        CodegenConfig config = CodegenConfigLoader.forName(lang);
+        config.setOutputDir(outputDir.getAbsolutePath());
+        config.setInputSpec(BenchmarkSpec.RESOURCE);
+
+        generator = new TeamCityGenerator();
+        generator.setThreads(threads);
+        generator.opts(new ClientOptInput().opts(new ClientOpts()).swagger(SpecCache.copy(spec)).config(config));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() {
+        System.clearProperty("models");
+        System.clearProperty("modelTests");
+        System.clearProperty("modelDocs");
+        FileUtils.deleteQuietly(outputDir);
+    }
+
+    @Benchmark
+    public List<File> generateModels() {
+        return generator.generate();
+    }
+}
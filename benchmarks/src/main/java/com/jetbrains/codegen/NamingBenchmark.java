@@ -0,0 +1,54 @@
+package com.jetbrains.codegen;
+
+import com.jetbrains.codegen.docs.TeamCityDocsCodegen;
+import com.jetbrains.codegen.kotlin.TeamCityKotlinCodegen;
+import io.swagger.codegen.DefaultCodegen;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name conversions which the codegens call many times for every model, property and type reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NamingBenchmark {
+    /**
+     * Model, property and parameter names as they occur in the TeamCity spec.
+     */
+    private static final String[] NAMES = {
+            "Build", "buildTypes", "agentPool", "VcsRootInstances", "snapshot-dependencies", "artifact-dependencies",
+            "$locator", "build[]", "properties[name]", "test occurrences", "problemOccurrence(s)", "$", "200Response"
+    };
+
+    @Param({"kotlin", "docs"})
+    public String codegen;
+
+    private DefaultCodegen config;
+
+    @Setup
+    public void setUp() {
+        config = "kotlin".equals(codegen) ? new TeamCityKotlinCodegen() : new TeamCityDocsCodegen();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(13)
+    public void sanitizeName(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(config.sanitizeName(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(13)
+    public void toModelName(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(config.toModelName(name));
+        }
+    }
+}
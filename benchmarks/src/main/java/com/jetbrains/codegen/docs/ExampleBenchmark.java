@@ -0,0 +1,50 @@
+package com.jetbrains.codegen.docs;
+
+import com.jetbrains.codegen.BenchmarkSpec;
+import com.jetbrains.codegen.ModelGraph;
+import io.swagger.models.Model;
+import io.swagger.models.ModelImpl;
+import io.swagger.models.Swagger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and XML examples of models of the docs codegen. The chosen models reference each other, so their examples
+ * nest models down to the maximum example depth.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Thread)
+public class ExampleBenchmark {
+    @Param({"Build", "BuildType", "Project", "Agent"})
+    public String model;
+
+    private Map<String, Model> definitions;
+    private ModelGraph modelGraph;
+    private TeamCityExampleGenerator exampleGenerator;
+    private TeamCityXMLExampleGenerator xmlExampleGenerator;
+
+    @Setup(Level.Trial)
+    public void readSpec() {
+        Swagger swagger = BenchmarkSpec.read();
+        definitions = swagger.getDefinitions();
+        modelGraph = ModelGraph.build(definitions);
+        exampleGenerator = new TeamCityExampleGenerator(modelGraph);
+        xmlExampleGenerator = new TeamCityXMLExampleGenerator(modelGraph);
+    }
+
+    @Benchmark
+    public String modelToJson() {
+        return exampleGenerator.modelToJson(model, TeamCityExampleGenerator.MIME_TYPE_JSON, definitions.get(model));
+    }
+
+    @Benchmark
+    public String modelToXml() {
+        return xmlExampleGenerator.modelToXml(model, (ModelImpl) definitions.get(model));
+    }
+}
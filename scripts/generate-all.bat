@@ -0,0 +1,5 @@
+java -cp swagger-codegen-cli-2.4.9.jar;../target/teamcity-client-codegen.jar ^
+com.jetbrains.codegen.TeamCityCodegen tc-generate ^
+-i http://localhost/app/rest/swagger.json ^
+--jobs jobs.json ^
+-DapiTests=false -DapiDocs=false -DmodelTests=false -DmodelDocs=false
\ No newline at end of file
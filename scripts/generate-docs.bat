@@ -1,4 +1,4 @@
-java -jar ../target/teamcity-client-codegen.jar generate ^
+java -jar ../target/teamcity-client-codegen.jar tc-generate ^
 -l teamcity-docs ^
 -i "C:\Users\Fedor\Downloads\swagger.json" ^
 -o "C:\IdeaProjects\teamcity-rest-docs"
\ No newline at end of file
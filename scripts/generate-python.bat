@@ -1,5 +1,5 @@
 java -cp swagger-codegen-cli-2.4.9.jar;../target/teamcity-client-codegen.jar ^
-io.swagger.codegen.SwaggerCodegen generate ^
+com.jetbrains.codegen.TeamCityCodegen tc-generate ^
 -l teamcity-python ^
 -i http://localhost/app/rest/swagger.json ^
 -o "D:\TC-Python-Client" ^
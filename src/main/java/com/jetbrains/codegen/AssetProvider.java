@@ -0,0 +1,15 @@
+package com.jetbrains.codegen;
+
+import java.util.Map;
+
+/**
+ * Implemented by codegens which produce files of their own besides the templated ones, e.g. the shared examples of
+ * the docs pages. {@link TeamCityGenerator} writes the assets with the supporting files, after all models and APIs
+ * are processed, so an implementation may collect them while processing.
+ */
+public interface AssetProvider {
+    /**
+     * @return contents of the assets by their path relative to the output folder, using {@code /} as the separator
+     */
+    Map<String, String> getAssets();
+}
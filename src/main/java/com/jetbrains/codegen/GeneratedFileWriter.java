@@ -0,0 +1,275 @@
+package com.jetbrains.codegen;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes generated files only if their content has changed.
+ * <p>
+ * The content is streamed into a temporary file next to the target while its digest is computed. If the target
+ * already has the same content, the temporary file is dropped and the target (with its modification time) is left
+ * untouched; otherwise the target is atomically replaced. Keeping unchanged files intact avoids invalidating the
+ * caches of Gradle and IDEs which consume the generated sources. Safe for concurrent use on different files.
+ * <p>
+ * With writer threads, files are written in the background: the content is rendered by the caller, and the file is
+ * queued for a writer thread. At most {@value #MAX_PENDING_PER_THREAD} files per writer thread are queued, callers
+ * wait for the writers beyond that, so slow disks throttle the generation instead of filling the memory. Directories
+ * are created by the caller, once per directory, before their files are queued. Failed writes are collected and
+ * reported by {@link #flush()}, which must be called before the files are used.
+ */
+public class GeneratedFileWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(GeneratedFileWriter.class);
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int MAX_PENDING_PER_THREAD = 32;
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger deleted = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final int maxPending;
+    private final List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+    private final Set<File> directories = ConcurrentHashMap.newKeySet();
+
+    public interface Content {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private interface Bytes {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Creates a writer which writes files on the calling thread.
+     */
+    public GeneratedFileWriter() {
+        this(0);
+    }
+
+    /**
+     * @param threads number of threads writing files in the background, 0 to write files on the calling thread
+     */
+    public GeneratedFileWriter(int threads) {
+        if (threads > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "generated-file-writer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            maxPending = threads * MAX_PENDING_PER_THREAD;
+            pending = new Semaphore(maxPending);
+        } else {
+            executor = null;
+            maxPending = 0;
+            pending = null;
+        }
+    }
+
+    /**
+     * @return whether files are written in the background, so that they may not exist until {@link #flush()}
+     */
+    public boolean isAsynchronous() {
+        return executor != null;
+    }
+
+    public File write(String filename, String contents) throws IOException {
+        return write(filename, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public File write(String filename, Content content) throws IOException {
+        if (isAsynchronous()) {
+            StringWriter rendered = new StringWriter();
+            content.writeTo(rendered);
+            return write(filename, rendered.toString());
+        }
+        File target = new File(filename);
+        createParentDirectory(target);
+        return writeFile(target, out -> {
+            try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                content.writeTo(writer);
+            }
+        });
+    }
+
+    public File write(String filename, byte[] content) throws IOException {
+        File target = new File(filename);
+        createParentDirectory(target);
+        if (!isAsynchronous()) {
+            return writeFile(target, out -> out.write(content));
+        }
+
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write " + filename);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    writeFile(target, out -> out.write(content));
+                } catch (IOException e) {
+                    LOG.error("Could not write file " + filename, e);
+                    failures.add(e);
+                } catch (RuntimeException e) {
+                    LOG.error("Could not write file " + filename, e);
+                    failures.add(new IOException("Could not write file " + filename, e));
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            throw new IOException("Could not queue file " + filename, e);
+        }
+        return target;
+    }
+
+    /**
+     * Waits until all queued files are written.
+     *
+     * @throws IOException if any file written in the background could not be written; the other failures are
+     *                     suppressed by it
+     */
+    public void flush() throws IOException {
+        if (!isAsynchronous()) {
+            return;
+        }
+        try {
+            pending.acquire(maxPending);
+            pending.release(maxPending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for generated files to be written");
+        }
+
+        List<IOException> failed;
+        synchronized (failures) {
+            failed = new ArrayList<>(failures);
+            failures.clear();
+        }
+        if (!failed.isEmpty()) {
+            IOException failure = new IOException("Could not write " + failed.size() + " generated file(s), the first failure: "
+                    + failed.get(0).getMessage(), failed.get(0));
+            failed.subList(1, failed.size()).forEach(failure::addSuppressed);
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops the writer threads once the queued files are written. Call {@link #flush()} first to wait for them.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void createParentDirectory(File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (directories.contains(parent)) {
+            return;
+        }
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        directories.add(parent);
+    }
+
+    private File writeFile(File target, Bytes content) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        String filename = target.getPath();
+        File temp = File.createTempFile("." + target.getName() + ".", ".tmp", parent);
+        try {
+            MessageDigest digest = newDigest();
+            long length;
+            try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), digest)) {
+                content.writeTo(out);
+            }
+            length = temp.length();
+
+            if (target.isFile() && target.length() == length && Arrays.equals(digest.digest(), digestOf(target))) {
+                unchanged.incrementAndGet();
+                LOG.debug("unchanged file " + filename);
+                return target;
+            }
+
+            LOG.info("writing file " + filename);
+            move(temp, target);
+            written.incrementAndGet();
+            return target;
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Records files deleted because they are no longer generated.
+     */
+    public void fileDeleted() {
+        deleted.incrementAndGet();
+    }
+
+    public int getWrittenCount() {
+        return written.get();
+    }
+
+    public int getUnchangedCount() {
+        return unchanged.get();
+    }
+
+    public int getDeletedCount() {
+        return deleted.get();
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] digestOf(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+            while (in.read(buffer) != -1) {
+                // the digest is updated while reading
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
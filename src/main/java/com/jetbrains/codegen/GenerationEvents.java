@@ -0,0 +1,103 @@
+package com.jetbrains.codegen;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR events of the generation, recorded together with the {@link GenerationMetrics} spans. Start a recording with
+ * {@code -XX:StartFlightRecording} to see them next to the JVM events.
+ * <p>
+ * Only used if the JVM supports JFR, see {@link GenerationMetrics}.
+ */
+final class GenerationEvents {
+    private static final String CATEGORY = "TeamCity Codegen";
+
+    private GenerationEvents() {
+    }
+
+    static GenerationEvent begin(GenerationMetrics.Kind kind, String generator, String name, String stage) {
+        GenerationEvent event;
+        switch (kind) {
+            case PHASE:
+                event = new PhaseEvent();
+                break;
+            case MODEL:
+                event = new ModelEvent();
+                break;
+            case OPERATION:
+                event = new OperationEvent();
+                break;
+            case API:
+                event = new ApiEvent();
+                break;
+            default:
+                event = new FileEvent();
+                break;
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.generator = generator;
+        event.name = name;
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    static void commit(GenerationEvent event, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Category(CATEGORY)
+    @StackTrace(false)
+    abstract static class GenerationEvent extends Event {
+        @Label("Generator")
+        String generator;
+        @Label("Name")
+        String name;
+        @Label("Stage")
+        String stage;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.jetbrains.codegen.Phase")
+    @Label("Generation Phase")
+    @Description("A phase of the generation, e.g. processing or rendering of all models")
+    static class PhaseEvent extends GenerationEvent {
+    }
+
+    @Name("com.jetbrains.codegen.Model")
+    @Label("Model")
+    @Description("Processing, example generation or rendering of a model")
+    static class ModelEvent extends GenerationEvent {
+    }
+
+    @Name("com.jetbrains.codegen.Operation")
+    @Label("Operation")
+    @Description("Processing of an operation")
+    static class OperationEvent extends GenerationEvent {
+    }
+
+    @Name("com.jetbrains.codegen.Api")
+    @Label("API")
+    @Description("Processing or rendering of the operations of a tag")
+    static class ApiEvent extends GenerationEvent {
+    }
+
+    @Name("com.jetbrains.codegen.File")
+    @Label("Generated File")
+    @Description("Rendering and writing of a generated file")
+    static class FileEvent extends GenerationEvent {
+    }
+}
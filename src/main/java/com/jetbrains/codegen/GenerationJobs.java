@@ -0,0 +1,63 @@
+package com.jetbrains.codegen;
+
+import io.swagger.util.Json;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jobs file of {@code tc-generate --jobs}: the targets generated from the input spec in a single run, e.g.
+ * <pre>
+ * {
+ *   "targets": [
+ *     {"lang": "teamcity-kotlin", "output": "out/kotlin"},
+ *     {"lang": "teamcity-python", "output": "out/python", "additionalProperties": {"packageName": "teamcity_python"}},
+ *     {"lang": "teamcity-docs", "output": "out/docs"}
+ *   ]
+ * }
+ * </pre>
+ */
+public class GenerationJobs {
+    public List<Target> targets = new ArrayList<>();
+
+    public static GenerationJobs read(File file) throws IOException {
+        GenerationJobs jobs = Json.mapper().readValue(file, GenerationJobs.class);
+        if (jobs.targets == null || jobs.targets.isEmpty()) {
+            throw new IOException("No targets are listed in " + file);
+        }
+        for (Target target : jobs.targets) {
+            if (target.lang == null || target.lang.isEmpty()) {
+                throw new IOException("A target in " + file + " has no lang");
+            }
+        }
+        return jobs;
+    }
+
+    public static class Target {
+        /**
+         * client language to generate, as for {@code -l}
+         */
+        public String lang;
+        /**
+         * where to write the generated files, as for {@code -o}
+         */
+        public String output = "";
+        /**
+         * optional config file of the target, as for {@code -c}
+         */
+        public String configFile;
+        /**
+         * additional properties of the target, on top of the ones passed with {@code --additional-properties}
+         */
+        public Map<String, String> additionalProperties = new LinkedHashMap<>();
+
+        @Override
+        public String toString() {
+            return lang + " -> " + output;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.jetbrains.codegen;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.swagger.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Content-hash manifest used by incremental generation.
+ * <p>
+ * The manifest is stored in the output directory and maps every generation unit (a model, an API tag or the set of
+ * supporting files) to the hash of its inputs and to the files it produced. A unit whose input hash is unchanged and
+ * whose files still exist is not rendered again; files produced by a previous run which no longer belong to any unit
+ * are deleted.
+ */
+public class GenerationManifest {
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationManifest.class);
+
+    public static final String MANIFEST_FILE = ".swagger-codegen" + File.separator + "tc-manifest.json";
+    private static final int VERSION = 1;
+
+    private final File outputDir;
+    private final State previous;
+    private final State current = new State();
+    private boolean reusable;
+
+    private GenerationManifest(File outputDir, State previous) {
+        this.outputDir = outputDir.getAbsoluteFile();
+        this.previous = previous;
+    }
+
+    public static GenerationManifest load(String outputFolder) {
+        File outputDir = new File(outputFolder);
+        File manifestFile = new File(outputDir, MANIFEST_FILE);
+        State previous = null;
+        if (manifestFile.isFile()) {
+            try {
+                previous = Json.mapper().readValue(manifestFile, State.class);
+                if (previous.version != VERSION) {
+                    previous = null;
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not read generation manifest " + manifestFile + ", regenerating everything", e);
+            }
+        }
+        return new GenerationManifest(outputDir, previous == null ? new State() : previous);
+    }
+
+    /**
+     * Compares the configuration and the templates used by the previous run with the current ones.
+     * Previously generated files are only reused if both are unchanged.
+     *
+     * @param configHash   hash of the configuration of the current run
+     * @param templateHash resolves a template name to the hash of its current content, or null if it can't be resolved
+     */
+    public void init(String configHash, Function<String, String> templateHash) {
+        current.config = configHash;
+        reusable = configHash.equals(previous.config);
+        if (reusable) {
+            for (Map.Entry<String, String> template : previous.templates.entrySet()) {
+                if (!template.getValue().equals(templateHash.apply(template.getKey()))) {
+                    LOG.info("Template " + template.getKey() + " has changed, regenerating everything");
+                    reusable = false;
+                    break;
+                }
+            }
+        } else if (previous.config != null) {
+            LOG.info("Generation configuration has changed, regenerating everything");
+        }
+        if (reusable) {
+            current.templates.putAll(previous.templates);
+        }
+    }
+
+    public void recordTemplate(String name, String hash) {
+        current.templates.put(name, hash);
+    }
+
+    /**
+     * @return files generated for the unit by the previous run if its inputs are unchanged and the files still exist,
+     * null if the unit has to be generated again
+     */
+    public List<File> getUpToDateFiles(String key, String inputHash) {
+        Entry entry = previous.entries.get(key);
+        if (!reusable || entry == null || !entry.hash.equals(inputHash)) {
+            return null;
+        }
+
+        List<File> files = new ArrayList<>();
+        for (String path : entry.files) {
+            File file = new File(outputDir, path);
+            if (!file.exists()) {
+                return null;
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    public void record(String key, String inputHash, List<File> files) {
+        Entry entry = new Entry();
+        entry.hash = inputHash;
+        for (File file : files) {
+            entry.files.add(relativize(file));
+        }
+        current.entries.put(key, entry);
+    }
+
+    /**
+     * Deletes files produced by the previous run which are not produced by the current one and writes the manifest.
+     *
+     * @param fileWriter records the deleted files
+     * @param isLive     tells whether a unit of the previous run still exists in the spec;
+     *                   live units which were not generated in this run (e.g. filtered out) keep their files
+     */
+    public void save(GeneratedFileWriter fileWriter, Predicate<String> isLive) throws IOException {
+        for (Map.Entry<String, Entry> entry : previous.entries.entrySet()) {
+            if (!current.entries.containsKey(entry.getKey()) && isLive.test(entry.getKey())) {
+                current.entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Set<String> currentFiles = new HashSet<>();
+        current.entries.values().forEach(entry -> currentFiles.addAll(entry.files));
+        for (Entry entry : previous.entries.values()) {
+            for (String path : entry.files) {
+                File file = new File(outputDir, path);
+                if (!currentFiles.contains(path) && file.isFile()) {
+                    LOG.info("Deleting stale file " + file);
+                    if (file.delete()) {
+                        fileWriter.fileDeleted();
+                    } else {
+                        LOG.warn("Could not delete stale file " + file);
+                    }
+                }
+            }
+        }
+
+        File manifestFile = new File(outputDir, MANIFEST_FILE);
+        manifestFile.getParentFile().mkdirs();
+        Json.mapper().writer()
+                .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                .withDefaultPrettyPrinter()
+                .writeValue(manifestFile, current);
+    }
+
+    private String relativize(File file) {
+        Path path = outputDir.toPath().relativize(file.getAbsoluteFile().toPath().normalize());
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    public static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class State {
+        public int version = VERSION;
+        public String config;
+        public Map<String, String> templates = new ConcurrentHashMap<>();
+        public Map<String, Entry> entries = new ConcurrentHashMap<>();
+    }
+
+    public static class Entry {
+        public String hash;
+        public List<String> files = new ArrayList<>();
+    }
+}
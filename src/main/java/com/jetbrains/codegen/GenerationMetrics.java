@@ -0,0 +1,389 @@
+package com.jetbrains.codegen;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.util.Json;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Timings of a generation run: phases (e.g. processing of all models) with their wall and CPU time and allocated
+ * bytes, and the time spent on every model, operation, API and generated file.
+ * <p>
+ * Every span is also recorded as a JFR event (see {@link GenerationEvents}) if the JVM supports JFR and a recording is
+ * running. The timings themselves are only collected if the metrics are created with {@code collecting = true}, e.g.
+ * when a report is requested with {@code --metrics-out}; otherwise spans cost little more than a check whether JFR is
+ * recording.
+ * <p>
+ * CPU time and allocated bytes of a phase cover the thread which runs it and the work it hands over to other threads
+ * through {@link #onWorker}. Both are reported only if the JVM can measure them.
+ */
+public class GenerationMetrics {
+    public static final String PROCESS = "process";
+    public static final String EXAMPLE = "example";
+    public static final String RENDER = "render";
+
+    private static final int TOP_COUNT = 20;
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public enum Kind {PHASE, MODEL, OPERATION, API, FILE}
+
+    private final String name;
+    private final boolean collecting;
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+    private volatile Phase currentPhase;
+
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+    private final Map<String, ItemStats> models = new ConcurrentHashMap<>();
+    private final Map<String, ItemStats> operations = new ConcurrentHashMap<>();
+    private final Map<String, ItemStats> apis = new ConcurrentHashMap<>();
+    private final Map<String, FileStats> files = new ConcurrentHashMap<>();
+    private final Map<String, Object> summary = new ConcurrentSkipListMap<>();
+    private final List<GenerationMetrics> targets = new CopyOnWriteArrayList<>();
+
+    public GenerationMetrics(String name, boolean collecting) {
+        this.name = name;
+        this.collecting = collecting;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isCollecting() {
+        return collecting;
+    }
+
+    /**
+     * Creates the metrics of one of the targets of the run, which are included in the report of this run.
+     */
+    public GenerationMetrics target(String name) {
+        GenerationMetrics target = new GenerationMetrics(name, collecting);
+        targets.add(target);
+        return target;
+    }
+
+    /**
+     * Starts a phase; its spans, and the work of other threads passed through {@link #onWorker}, are attributed to it
+     * until it is closed.
+     */
+    public Phase phase(String name) {
+        Phase phase = new Phase(name, currentPhase);
+        currentPhase = phase;
+        if (collecting) {
+            phases.add(phase);
+        }
+        return phase;
+    }
+
+    public Span model(String name, String stage) {
+        return new Span(Kind.MODEL, name, stage);
+    }
+
+    public Span operation(String name, String stage) {
+        return new Span(Kind.OPERATION, name, stage);
+    }
+
+    public Span api(String tag, String stage) {
+        return new Span(Kind.API, tag, stage);
+    }
+
+    public Span file(String path) {
+        return new Span(Kind.FILE, path, RENDER);
+    }
+
+    /**
+     * Runs work of the current phase, accounting its CPU time and allocations to the phase if it runs on another thread.
+     */
+    public <T> T onWorker(Supplier<T> work) {
+        Phase phase = currentPhase;
+        if (!collecting || phase == null || phase.thread == Thread.currentThread()) {
+            return work.get();
+        }
+        long cpu = currentThreadCpuTime();
+        long allocated = currentThreadAllocatedBytes();
+        try {
+            return work.get();
+        } finally {
+            phase.addWorkerUsage(elapsed(cpu, currentThreadCpuTime()), elapsed(allocated, currentThreadAllocatedBytes()));
+        }
+    }
+
+    /**
+     * Adds a value, e.g. a counter, to the summary of the report.
+     */
+    public void putSummary(String key, Object value) {
+        summary.put(key, value);
+    }
+
+    /**
+     * Marks the end of the run, so that later activity (e.g. writing the report) is not counted as part of it.
+     */
+    public void finish() {
+        if (endNanos == 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public void writeReport(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        Json.pretty().writeValue(file, toJson());
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode report = Json.mapper().createObjectNode();
+        report.put("name", name);
+        report.put("wallMs", toMillis((endNanos != 0 ? endNanos : System.nanoTime()) - startNanos));
+        if (!summary.isEmpty()) {
+            report.set("summary", Json.mapper().valueToTree(summary));
+        }
+
+        if (!phases.isEmpty()) {
+            ArrayNode phasesNode = report.putArray("phases");
+            for (Phase phase : phases) {
+                ObjectNode node = phasesNode.addObject();
+                node.put("name", phase.name);
+                node.put("wallMs", toMillis(phase.nanos));
+                if (phase.cpuNanos >= 0) {
+                    node.put("cpuMs", toMillis(phase.cpuNanos + phase.workerCpuNanos.sum()));
+                }
+                if (phase.allocatedBytes >= 0) {
+                    node.put("allocatedBytes", phase.allocatedBytes + phase.workerAllocatedBytes.sum());
+                }
+            }
+        }
+
+        addSlowest(report, "slowestModels", models);
+        addSlowest(report, "slowestOperations", operations);
+        addSlowest(report, "slowestApis", apis);
+        if (!files.isEmpty()) {
+            ArrayNode largest = report.putArray("largestFiles");
+            files.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<String, FileStats> file) -> file.getValue().bytes.get()).reversed()
+                            .thenComparing(Map.Entry::getKey))
+                    .limit(TOP_COUNT)
+                    .forEach(file -> {
+                        ObjectNode node = largest.addObject();
+                        node.put("path", file.getKey());
+                        node.put("bytes", file.getValue().bytes.get());
+                        node.put("renderMs", toMillis(file.getValue().nanos.sum()));
+                    });
+        }
+
+        addAll(report, "models", models);
+        addAll(report, "operations", operations);
+        addAll(report, "apis", apis);
+
+        if (!targets.isEmpty()) {
+            ArrayNode targetsNode = report.putArray("targets");
+            targets.forEach(target -> targetsNode.add(target.toJson()));
+        }
+        return report;
+    }
+
+    private static void addSlowest(ObjectNode report, String field, Map<String, ItemStats> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        ArrayNode slowest = report.putArray(field);
+        items.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, ItemStats> item) -> item.getValue().totalNanos()).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(TOP_COUNT)
+                .forEach(item -> slowest.add(item.getValue().toJson(item.getKey())));
+    }
+
+    private static void addAll(ObjectNode report, String field, Map<String, ItemStats> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        ArrayNode all = report.putArray(field);
+        items.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(item -> all.add(item.getValue().toJson(item.getKey())));
+    }
+
+    private void record(Kind kind, String name, String stage, long nanos, long bytes) {
+        switch (kind) {
+            case MODEL:
+                models.computeIfAbsent(name, key -> new ItemStats()).add(stage, nanos);
+                break;
+            case OPERATION:
+                operations.computeIfAbsent(name, key -> new ItemStats()).add(stage, nanos);
+                break;
+            case API:
+                apis.computeIfAbsent(name, key -> new ItemStats()).add(stage, nanos);
+                break;
+            case FILE:
+                FileStats file = files.computeIfAbsent(name, key -> new FileStats());
+                file.nanos.add(nanos);
+                file.bytes.set(bytes);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Timed piece of work, recorded when closed.
+     */
+    public class Span implements AutoCloseable {
+        final Kind kind;
+        final String name;
+        final String stage;
+        private final long start;
+        private final GenerationEvents.GenerationEvent event;
+        private long bytes;
+        long nanos;
+
+        private Span(Kind kind, String name, String stage) {
+            this.kind = kind;
+            this.name = name;
+            this.stage = stage;
+            this.event = JFR_AVAILABLE ? GenerationEvents.begin(kind, GenerationMetrics.this.name, name, stage) : null;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Sets the size of the output of the span, e.g. of the generated file.
+         */
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            nanos = System.nanoTime() - start;
+            if (event != null) {
+                GenerationEvents.commit(event, bytes);
+            }
+            if (collecting) {
+                record(kind, name, stage, nanos, bytes);
+            }
+        }
+    }
+
+    /**
+     * Span of a phase, which also measures the CPU time and allocations of the phase.
+     */
+    public class Phase extends Span {
+        private final Phase parent;
+        private final Thread thread = Thread.currentThread();
+        private final long startCpu;
+        private final long startAllocated;
+        private final LongAdder workerCpuNanos = new LongAdder();
+        private final LongAdder workerAllocatedBytes = new LongAdder();
+        private long cpuNanos = -1;
+        private long allocatedBytes = -1;
+
+        private Phase(String name, Phase parent) {
+            super(Kind.PHASE, name, null);
+            this.parent = parent;
+            this.startCpu = collecting ? currentThreadCpuTime() : -1;
+            this.startAllocated = collecting ? currentThreadAllocatedBytes() : -1;
+        }
+
+        private void addWorkerUsage(long cpuNanos, long allocatedBytes) {
+            if (cpuNanos > 0) {
+                workerCpuNanos.add(cpuNanos);
+            }
+            if (allocatedBytes > 0) {
+                workerAllocatedBytes.add(allocatedBytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (collecting) {
+                cpuNanos = elapsed(startCpu, currentThreadCpuTime());
+                allocatedBytes = elapsed(startAllocated, currentThreadAllocatedBytes());
+            }
+            super.close();
+            if (currentPhase == this) {
+                currentPhase = parent;
+            }
+        }
+    }
+
+    private static class ItemStats {
+        private final Map<String, LongAdder> stageNanos = new ConcurrentSkipListMap<>();
+
+        void add(String stage, long nanos) {
+            stageNanos.computeIfAbsent(stage, key -> new LongAdder()).add(nanos);
+        }
+
+        /**
+         * Examples are generated while a model is processed or rendered, so they are not counted on their own.
+         */
+        long totalNanos() {
+            long total = 0;
+            for (Map.Entry<String, LongAdder> stage : stageNanos.entrySet()) {
+                if (!stage.getKey().equals(EXAMPLE)) {
+                    total += stage.getValue().sum();
+                }
+            }
+            return total;
+        }
+
+        ObjectNode toJson(String name) {
+            ObjectNode node = Json.mapper().createObjectNode();
+            node.put("name", name);
+            node.put("totalMs", toMillis(totalNanos()));
+            stageNanos.forEach((stage, nanos) -> node.put(stage + "Ms", toMillis(nanos.sum())));
+            return node;
+        }
+    }
+
+    private static class FileStats {
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong bytes = new AtomicLong();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static long elapsed(long start, long end) {
+        return start < 0 || end < 0 ? -1 : end - start;
+    }
+
+    private static long currentThreadCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
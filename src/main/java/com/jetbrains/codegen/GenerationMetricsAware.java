@@ -0,0 +1,9 @@
+package com.jetbrains.codegen;
+
+/**
+ * Implemented by codegens which time their own work, e.g. example generation, in the {@link GenerationMetrics} of the
+ * current run of {@link TeamCityGenerator}.
+ */
+public interface GenerationMetricsAware {
+    void setGenerationMetrics(GenerationMetrics metrics);
+}
@@ -0,0 +1,213 @@
+package com.jetbrains.codegen;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.swagger.codegen.CodegenConfig;
+import io.swagger.codegen.utils.ImplementationVersion;
+import io.swagger.models.HttpMethod;
+import io.swagger.models.Operation;
+import io.swagger.models.Path;
+import io.swagger.models.Swagger;
+import io.swagger.util.Json;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Computes the input hashes of generation units for the {@link GenerationManifest}.
+ * <p>
+ * A model depends on its own definition and on every definition reachable from it through references and
+ * inheritance, an API tag on its operations and the definitions they reach. Everything depends on the configuration,
+ * the global parts of the spec and the generator version. For codegens which list the usages of a model in its file,
+ * see {@link ModelUsageProvider}, a model also depends on its usages.
+ */
+class ManifestInputs {
+    private static final String DEFINITION_REF_PREFIX = "#/definitions/";
+    private static final Set<String> IGNORED_PROPERTIES = new HashSet<>(Arrays.asList("generatedDate", "inputSpec"));
+    private static final ObjectWriter CANONICAL_WRITER = Json.mapper().writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final ModelGraph modelGraph;
+    private final ModelUsageProvider modelUsages;
+    private final String configHash;
+    private final Map<String, String> definitionHashes = new HashMap<>();
+    private final Map<String, StringBuilder> apiInputs = new TreeMap<>();
+    private final Map<String, Set<String>> apiDependencies = new HashMap<>();
+
+    ManifestInputs(Swagger swagger, ModelGraph modelGraph, CodegenConfig config, Collection<String> generatorSwitches) {
+        this.modelGraph = modelGraph;
+        this.modelUsages = config instanceof ModelUsageProvider ? (ModelUsageProvider) config : null;
+        this.configHash = GenerationManifest.hash(
+                describeConfig(config),
+                String.valueOf(generatorSwitches),
+                describeSpec(swagger),
+                ImplementationVersion.read(),
+                describeGeneratorJar()
+        );
+
+        for (Map.Entry<String, ?> definition : modelGraph.getDefinitions().entrySet()) {
+            definitionHashes.put(definition.getKey(), GenerationManifest.hash(definition.getKey(), toCanonicalJson(definition.getValue())));
+        }
+
+        if (swagger.getPaths() != null) {
+            for (Map.Entry<String, Path> path : swagger.getPaths().entrySet()) {
+                String pathParameters = toCanonicalJson(path.getValue().getParameters());
+                for (Map.Entry<HttpMethod, Operation> operation : path.getValue().getOperationMap().entrySet()) {
+                    JsonNode operationJson = Json.mapper().valueToTree(operation.getValue());
+                    Set<String> references = new TreeSet<>();
+                    collectDefinitionReferences(operationJson, references);
+
+                    List<String> tags = operation.getValue().getTags();
+                    for (String tag : tags == null || tags.isEmpty() ? Collections.singletonList("default") : tags) {
+                        String key = config.sanitizeTag(tag);
+                        apiInputs.computeIfAbsent(key, k -> new StringBuilder())
+                                .append(path.getKey()).append(' ').append(operation.getKey()).append('\n')
+                                .append(pathParameters).append('\n')
+                                .append(toCanonicalJson(operationJson)).append('\n');
+                        apiDependencies.computeIfAbsent(key, k -> new TreeSet<>()).addAll(references);
+                    }
+                }
+            }
+        }
+    }
+
+    String getConfigHash() {
+        return configHash;
+    }
+
+    Set<String> getApiTags() {
+        return apiInputs.keySet();
+    }
+
+    String getModelHash(String name) {
+        String ownHash = definitionHashes.get(name);
+        if (modelUsages != null) {
+            ownHash = GenerationManifest.hash(ownHash, modelUsages.describeModelUsages(name));
+        }
+        return hashWithDependencies(ownHash, Collections.singleton(name));
+    }
+
+    String getApiHash(String tag) {
+        StringBuilder inputs = apiInputs.get(tag);
+        if (inputs == null) {
+            return null;
+        }
+        return hashWithDependencies(GenerationManifest.hash(tag, inputs.toString()), apiDependencies.get(tag));
+    }
+
+    /**
+     * Supporting files are rendered from all models and operations, so they depend on the whole spec.
+     */
+    String getSupportingFilesHash() {
+        StringBuilder inputs = new StringBuilder();
+        new TreeMap<>(definitionHashes).forEach((name, hash) -> inputs.append(hash).append('\n'));
+        apiInputs.forEach((tag, operations) -> inputs.append(GenerationManifest.hash(tag, operations.toString())).append('\n'));
+        return GenerationManifest.hash(configHash, inputs.toString());
+    }
+
+    private String hashWithDependencies(String ownHash, Collection<String> roots) {
+        StringBuilder inputs = new StringBuilder(configHash).append('\n').append(ownHash).append('\n');
+        for (String dependency : collectDependencies(roots)) {
+            inputs.append(dependency).append('=').append(definitionHashes.get(dependency)).append('\n');
+        }
+        return GenerationManifest.hash(inputs.toString());
+    }
+
+    private Set<String> collectDependencies(Collection<String> roots) {
+        Set<String> result = new TreeSet<>();
+        Deque<String> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            if (!modelGraph.contains(name) || !result.add(name)) {
+                continue;
+            }
+            queue.addAll(modelGraph.getReferences(name));
+            queue.addAll(modelGraph.getChildren(name));
+            if (modelGraph.getParent(name) != null) {
+                queue.add(modelGraph.getParent(name));
+            }
+        }
+        return result;
+    }
+
+    private void collectDefinitionReferences(JsonNode node, Set<String> result) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue().isTextual()) {
+                    String value = field.getValue().asText();
+                    if ("$ref".equals(field.getKey()) && value.startsWith(DEFINITION_REF_PREFIX)) {
+                        result.add(value.substring(DEFINITION_REF_PREFIX.length()));
+                    } else if ("$ref".equals(field.getKey()) || "format".equals(field.getKey())) {
+                        // simple refs and model names used as parameter formats (e.g. locators)
+                        result.add(value);
+                    }
+                } else {
+                    collectDefinitionReferences(field.getValue(), result);
+                }
+            }
+        } else if (node.isArray()) {
+            node.forEach(item -> collectDefinitionReferences(item, result));
+        }
+    }
+
+    private static String describeConfig(CodegenConfig config) {
+        Map<String, Object> description = new TreeMap<>();
+        description.put("name", config.getName());
+        description.put("templateDir", config.templateDir());
+        description.put("embeddedTemplateDir", config.embeddedTemplateDir());
+        description.put("library", config.getLibrary());
+        description.put("apiPackage", config.apiPackage());
+        description.put("modelPackage", config.modelPackage());
+        description.put("typeMapping", new TreeMap<>(config.typeMapping()));
+        description.put("importMapping", new TreeMap<>(config.importMapping()));
+        description.put("instantiationTypes", new TreeMap<>(config.instantiationTypes()));
+        description.put("reservedWordsMappings", new TreeMap<>(config.reservedWordsMappings()));
+
+        Map<String, String> additionalProperties = new TreeMap<>();
+        config.additionalProperties().forEach((key, value) -> {
+            // the generation timestamp changes on every run and the spec location does not matter, only its content
+            if (!IGNORED_PROPERTIES.contains(key) && (value instanceof String || value instanceof Number || value instanceof Boolean)) {
+                additionalProperties.put(key, value.toString());
+            }
+        });
+        description.put("additionalProperties", additionalProperties);
+        return toCanonicalJson(description);
+    }
+
+    private static String describeSpec(Swagger swagger) {
+        Map<String, Object> description = new TreeMap<>();
+        description.put("info", swagger.getInfo());
+        description.put("host", swagger.getHost());
+        description.put("basePath", swagger.getBasePath());
+        description.put("schemes", swagger.getSchemes());
+        description.put("consumes", swagger.getConsumes());
+        description.put("produces", swagger.getProduces());
+        description.put("tags", swagger.getTags());
+        description.put("securityDefinitions", swagger.getSecurityDefinitions());
+        description.put("vendorExtensions", swagger.getVendorExtensions());
+        return toCanonicalJson(description);
+    }
+
+    /**
+     * Changes of the generator itself invalidate the generated files as well.
+     */
+    private static String describeGeneratorJar() {
+        try {
+            File location = new File(TeamCityGenerator.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return location.isFile() ? location.getName() + ":" + location.length() + ":" + location.lastModified() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String toCanonicalJson(Object value) {
+        try {
+            return CANONICAL_WRITER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize " + value, e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.jetbrains.codegen;
+
+import io.swagger.models.ComposedModel;
+import io.swagger.models.Model;
+import io.swagger.models.RefModel;
+import io.swagger.models.properties.ArrayProperty;
+import io.swagger.models.properties.MapProperty;
+import io.swagger.models.properties.Property;
+import io.swagger.models.properties.RefProperty;
+
+import java.util.*;
+
+/**
+ * Immutable index of the relations between swagger definitions: inheritance (parents, children, depth),
+ * references between models (outgoing and reverse) and the x-subpackage of each model.
+ * It is built once per run in time linear to the size of the definitions and shared by the generator and the codegens.
+ */
+public final class ModelGraph {
+    private final Map<String, Model> definitions;
+    private final Map<String, String> parents;
+    private final Map<String, Set<String>> children;
+    private final Map<String, Integer> inheritanceDepths;
+    private final Map<String, Set<String>> references;
+    private final Map<String, Set<String>> referencedBy;
+    private final Map<String, String> subpackages;
+
+    private ModelGraph(Map<String, Model> definitions) {
+        this.definitions = Collections.unmodifiableMap(new LinkedHashMap<>(definitions));
+        this.parents = new HashMap<>();
+        this.children = new HashMap<>();
+        this.inheritanceDepths = new HashMap<>();
+        this.references = new HashMap<>();
+        this.referencedBy = new HashMap<>();
+        this.subpackages = new HashMap<>();
+    }
+
+    private ModelGraph(ModelGraph index, Map<String, Model> definitions) {
+        this.definitions = Collections.unmodifiableMap(new LinkedHashMap<>(definitions));
+        this.parents = index.parents;
+        this.children = index.children;
+        this.inheritanceDepths = index.inheritanceDepths;
+        this.references = index.references;
+        this.referencedBy = index.referencedBy;
+        this.subpackages = index.subpackages;
+    }
+
+    public static ModelGraph build(Map<String, Model> definitions) {
+        ModelGraph graph = new ModelGraph(definitions == null ? Collections.emptyMap() : definitions);
+        graph.index();
+        return graph;
+    }
+
+    /**
+     * Returns a graph over the given definitions which shares the index of this one. Used when several targets
+     * generate from their own copies of the same spec.
+     * The index is only reused if the copy has the same definitions, otherwise it is built again.
+     */
+    public ModelGraph withDefinitions(Map<String, Model> definitions) {
+        Map<String, Model> copy = definitions == null ? Collections.emptyMap() : definitions;
+        if (!copy.keySet().equals(this.definitions.keySet())) {
+            return build(copy);
+        }
+        return new ModelGraph(this, copy);
+    }
+
+    private void index() {
+        for (Map.Entry<String, Model> entry : definitions.entrySet()) {
+            String name = entry.getKey();
+            Model model = entry.getValue();
+
+            String parent = findParent(model);
+            if (parent != null && definitions.containsKey(parent)) {
+                parents.put(name, parent);
+                children.computeIfAbsent(parent, key -> new TreeSet<>()).add(name);
+            }
+
+            Set<String> modelReferences = new TreeSet<>();
+            collectReferences(model, modelReferences);
+            modelReferences.retainAll(definitions.keySet());
+            references.put(name, Collections.unmodifiableSet(modelReferences));
+            for (String reference : modelReferences) {
+                referencedBy.computeIfAbsent(reference, key -> new TreeSet<>()).add(name);
+            }
+
+            Object subpackage = model.getVendorExtensions() == null ? null : model.getVendorExtensions().get(TeamCityGenerator.X_SUBPACKAGE);
+            if (subpackage != null) {
+                subpackages.put(name, subpackage.toString());
+            }
+        }
+
+        for (String name : definitions.keySet()) {
+            computeInheritanceDepth(name);
+        }
+
+        children.replaceAll((name, names) -> Collections.unmodifiableSet(names));
+        referencedBy.replaceAll((name, names) -> Collections.unmodifiableSet(names));
+    }
+
+    private static String findParent(Model model) {
+        if (model instanceof ComposedModel) {
+            Model parent = ((ComposedModel) model).getParent();
+            if (parent instanceof RefModel) {
+                return ((RefModel) parent).getSimpleRef();
+            }
+            // check for interfaces
+            List<RefModel> interfaces = ((ComposedModel) model).getInterfaces();
+            if (interfaces != null && interfaces.size() > 0) {
+                return interfaces.get(0).getSimpleRef();
+            }
+        }
+        return null;
+    }
+
+    private int computeInheritanceDepth(String name) {
+        Integer known = inheritanceDepths.get(name);
+        if (known != null) {
+            return known;
+        }
+
+        // walk up until a model with a known depth (or the root) is found, guarding against cycles
+        Deque<String> chain = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        String current = name;
+        int depth = -1;
+        while (current != null && visited.add(current)) {
+            Integer currentDepth = inheritanceDepths.get(current);
+            if (currentDepth != null) {
+                depth = currentDepth;
+                break;
+            }
+            chain.push(current);
+            current = parents.get(current);
+        }
+
+        while (!chain.isEmpty()) {
+            depth++;
+            inheritanceDepths.put(chain.pop(), depth);
+        }
+        return inheritanceDepths.get(name);
+    }
+
+    private static void collectReferences(Model model, Set<String> result) {
+        if (model instanceof RefModel) {
+            result.add(((RefModel) model).getSimpleRef());
+        } else if (model instanceof ComposedModel) {
+            if (((ComposedModel) model).getAllOf() != null) {
+                for (Model component : ((ComposedModel) model).getAllOf()) {
+                    collectReferences(component, result);
+                }
+            }
+        } else if (model.getProperties() != null) {
+            for (Property property : model.getProperties().values()) {
+                collectReferences(property, result);
+            }
+        }
+    }
+
+    private static void collectReferences(Property property, Set<String> result) {
+        if (property instanceof RefProperty) {
+            result.add(((RefProperty) property).getSimpleRef());
+        } else if (property instanceof ArrayProperty) {
+            collectReferences(((ArrayProperty) property).getItems(), result);
+        } else if (property instanceof MapProperty) {
+            collectReferences(((MapProperty) property).getAdditionalProperties(), result);
+        }
+    }
+
+    public Map<String, Model> getDefinitions() {
+        return definitions;
+    }
+
+    public boolean contains(String name) {
+        return name != null && definitions.containsKey(name);
+    }
+
+    public Model getModel(String name) {
+        return name == null ? null : definitions.get(name);
+    }
+
+    /**
+     * @return name of the parent model (the first interface if no parent is set), or null for root models
+     */
+    public String getParent(String name) {
+        return parents.get(name);
+    }
+
+    public Set<String> getChildren(String name) {
+        return children.getOrDefault(name, Collections.emptySet());
+    }
+
+    public int getInheritanceDepth(String name) {
+        return inheritanceDepths.getOrDefault(name, 0);
+    }
+
+    /**
+     * @return names of the models referenced by properties of the given model, sorted by name
+     */
+    public Set<String> getReferences(String name) {
+        return references.getOrDefault(name, Collections.emptySet());
+    }
+
+    /**
+     * @return names of the models which reference the given model in their properties, sorted by name
+     */
+    public Set<String> getReferencedBy(String name) {
+        return referencedBy.getOrDefault(name, Collections.emptySet());
+    }
+
+    /**
+     * @return raw x-subpackage value of the model, or null if the model has none
+     */
+    public String getSubpackage(String name) {
+        return subpackages.get(name);
+    }
+}
@@ -0,0 +1,8 @@
+package com.jetbrains.codegen;
+
+/**
+ * Implemented by codegens which query the {@link ModelGraph} built by {@link TeamCityGenerator} for the current run.
+ */
+public interface ModelGraphAware {
+    void setModelGraph(ModelGraph modelGraph);
+}
@@ -0,0 +1,12 @@
+package com.jetbrains.codegen;
+
+import io.swagger.models.Model;
+
+/**
+ * Implemented by codegens which compute per-model data, e.g. examples, up front. {@link TeamCityGenerator} prepares
+ * every model to process before the models are processed, on the generation pool if parallel generation is enabled,
+ * so implementations must be thread-safe.
+ */
+public interface ModelPreparer {
+    void prepareModel(String name, Model model);
+}
@@ -0,0 +1,9 @@
+package com.jetbrains.codegen;
+
+/**
+ * Implemented by codegens whose model files {@link TeamCityGenerator} places in the folder of their
+ * {@code x-subpackage}, e.g. {@code models/build/Build.kt}. Other codegens get the flat model folder of the stock
+ * generator, which their templates assume when importing or linking models.
+ */
+public interface ModelSubpackageLayout {
+}
@@ -0,0 +1,13 @@
+package com.jetbrains.codegen;
+
+/**
+ * Implemented by codegens whose model files also list where the model is used, e.g. the docs pages. The
+ * {@link GenerationManifest} then regenerates the file of a model when its usages change, even if the model itself
+ * and the models it references don't.
+ */
+public interface ModelUsageProvider {
+    /**
+     * @return a stable description of the usages of the model which are shown in its file
+     */
+    String describeModelUsages(String name);
+}
@@ -0,0 +1,187 @@
+package com.jetbrains.codegen;
+
+import io.swagger.codegen.DefaultCodegen;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Name conversions shared by the codegens.
+ * <p>
+ * The codegens convert the same model and type names again and again: for every property, parameter and link. An
+ * instance memoizes model names, model file names and camelized names, so that every distinct name is converted once.
+ * The results depend on the options of the codegen (e.g. the model name prefix), so a codegen should {@link #clear()}
+ * the instance once its options are processed. Safe for concurrent use.
+ */
+public class Naming {
+    private final Map<String, String> modelNames = new ConcurrentHashMap<>();
+    private final Map<String, String> modelFilenames = new ConcurrentHashMap<>();
+    private final Map<String, String> camelized = new ConcurrentHashMap<>();
+    private final Map<String, String> camelizedLowercaseFirst = new ConcurrentHashMap<>();
+
+    /**
+     * Same as a chain of {@code replaceAll} which maps {@code input[]} to {@code input}, {@code input[a][b]} and
+     * {@code input(a)(b)} to {@code input_a_b}, and {@code input-name} and {@code input name} to {@code input_name},
+     * in a single scan. Names which need no changes are returned as is.
+     */
+    public static String sanitizeName(String name) {
+        // better error handling when map/array type is invalid
+        if (name == null) {
+            return "ERROR_UNKNOWN";
+        }
+
+        // if the name is just '$', map it to 'value' for the time being.
+        if ("$".equals(name)) {
+            return "value";
+        }
+
+        int length = name.length();
+        int i = 0;
+        while (i < length && !isSpecial(name.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return name;
+        }
+
+        StringBuilder result = new StringBuilder(length).append(name, 0, i);
+        for (; i < length; i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '[':
+                    if (i + 1 < length && name.charAt(i + 1) == ']') {
+                        // input[] => input
+                        i++;
+                    } else {
+                        result.append('_');
+                    }
+                    break;
+                case '(':
+                case '-':
+                case ' ':
+                    result.append('_');
+                    break;
+                case ']':
+                case ')':
+                    break;
+                default:
+                    result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean isSpecial(char c) {
+        return c == '[' || c == ']' || c == '(' || c == ')' || c == '-' || c == ' ';
+    }
+
+    /**
+     * Converts a spec model name to the name of the generated model: sanitized, without dollar signs, prefixed if it is
+     * a reserved word or starts with a digit, with the model name prefix and suffix, and camelized.
+     */
+    public String toModelName(String name, Predicate<String> isReservedWord, String modelNamePrefix, String modelNameSuffix) {
+        if (name == null) {
+            return convertModelName(null, isReservedWord, modelNamePrefix, modelNameSuffix);
+        }
+        String modelName = modelNames.get(name);
+        if (modelName == null) {
+            modelName = convertModelName(name, isReservedWord, modelNamePrefix, modelNameSuffix);
+            modelNames.put(name, modelName);
+        }
+        return modelName;
+    }
+
+    private String convertModelName(String name, Predicate<String> isReservedWord, String modelNamePrefix, String modelNameSuffix) {
+        // remove dollar sign
+        String modelName = sanitizeName(name).replace("$", "");
+
+        // model name cannot use reserved keyword, e.g. return
+        if (isReservedWord.test(modelName)) {
+            modelName = "model_" + modelName; // e.g. return => ModelReturn (after camelize)
+        }
+
+        // model name starts with number
+        if (startsWithDigit(modelName)) {
+            modelName = "model_" + modelName; // e.g. 200Response => Model200Response (after camelize)
+        }
+
+        if (!StringUtils.isEmpty(modelNamePrefix)) {
+            modelName = modelNamePrefix + "_" + modelName;
+        }
+
+        if (!StringUtils.isEmpty(modelNameSuffix)) {
+            modelName = modelName + "_" + modelNameSuffix;
+        }
+
+        // camelize the model name
+        // phone_number => PhoneNumber
+        return camelize(modelName);
+    }
+
+    /**
+     * Same as {@code name.matches("^\\d.*")}: an ASCII digit followed by anything but line terminators.
+     */
+    private static boolean startsWithDigit(String name) {
+        if (name.isEmpty() || name.charAt(0) < '0' || name.charAt(0) > '9') {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Memoizes the model file name computed by {@code conversion}.
+     */
+    public String toModelFilename(String name, Function<String, String> conversion) {
+        if (name == null) {
+            return conversion.apply(null);
+        }
+        String filename = modelFilenames.get(name);
+        if (filename == null) {
+            filename = conversion.apply(name);
+            modelFilenames.put(name, filename);
+        }
+        return filename;
+    }
+
+    /**
+     * Memoized {@link DefaultCodegen#camelize(String)}.
+     */
+    public String camelize(String word) {
+        return camelize(word, false);
+    }
+
+    /**
+     * Memoized {@link DefaultCodegen#camelize(String, boolean)}.
+     */
+    public String camelize(String word, boolean lowercaseFirstLetter) {
+        if (word == null) {
+            return DefaultCodegen.camelize(null, lowercaseFirstLetter);
+        }
+        Map<String, String> cache = lowercaseFirstLetter ? camelizedLowercaseFirst : camelized;
+        String result = cache.get(word);
+        if (result == null) {
+            result = DefaultCodegen.camelize(word, lowercaseFirstLetter);
+            cache.put(word, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drops the memoized names, e.g. once the options they depend on are set.
+     */
+    public void clear() {
+        modelNames.clear();
+        modelFilenames.clear();
+        camelized.clear();
+        camelizedLowercaseFirst.clear();
+    }
+}
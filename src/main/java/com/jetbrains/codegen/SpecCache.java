@@ -0,0 +1,286 @@
+package com.jetbrains.codegen;
+
+import io.swagger.codegen.utils.ImplementationVersion;
+import io.swagger.models.ComposedModel;
+import io.swagger.models.Model;
+import io.swagger.models.RefModel;
+import io.swagger.models.Swagger;
+import io.swagger.models.auth.AuthorizationValue;
+import io.swagger.parser.SwaggerParser;
+import io.swagger.util.Json;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local cache of swagger specs fetched over HTTP(S).
+ * <p>
+ * For every spec URL the cache keeps the downloaded spec, its ETag / Last-Modified validators and a snapshot of the
+ * parsed {@link Swagger} model. A warm run sends a conditional request and, if the server answers with
+ * 304 Not Modified, restores the snapshot: neither the spec is transferred nor parsed again. If the server can't be
+ * reached, reading fails unless the offline fallback to the last snapshot is enabled.
+ */
+public class SpecCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SpecCache.class);
+
+    private static final String SPEC_SUFFIX = ".json";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot.gz";
+    private static final String METADATA_SUFFIX = ".properties";
+    private static final String PLACEHOLDER_SPEC = "placeholder.json";
+
+    private static final String URL_PROPERTY = "url";
+    private static final String ETAG_PROPERTY = "etag";
+    private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+    private static final String VERSION_PROPERTY = "generatorVersion";
+
+    private final File cacheDir;
+    private int connectTimeout = 30_000;
+    private int readTimeout = 5 * 60_000;
+    private boolean offlineFallback;
+
+    public SpecCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public static File getDefaultCacheDir() {
+        return new File(System.getProperty("user.home"), ".swagger-codegen" + File.separator + "spec-cache");
+    }
+
+    public static boolean isCacheable(String location) {
+        return location != null && (location.startsWith("http://") || location.startsWith("https://"));
+    }
+
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sets whether the cached spec is used if the server can't be reached. By default reading fails then, so that
+     * code is not silently generated from an outdated spec.
+     */
+    public void setOfflineFallback(boolean offlineFallback) {
+        this.offlineFallback = offlineFallback;
+    }
+
+    /**
+     * Returns the spec at {@code location}, fetching and parsing it only if it has changed since it was cached.
+     *
+     * @param auths header and query authorization values, as passed with {@code -a}
+     */
+    public Swagger read(String location, List<AuthorizationValue> auths) throws IOException {
+        String key = toKey(location);
+        File specFile = new File(cacheDir, key + SPEC_SUFFIX);
+        File snapshotFile = new File(cacheDir, key + SNAPSHOT_SUFFIX);
+        File metadataFile = new File(cacheDir, key + METADATA_SUFFIX);
+
+        Properties metadata = loadMetadata(metadataFile);
+        boolean cached = location.equals(metadata.getProperty(URL_PROPERTY))
+                && ImplementationVersion.read().equals(metadata.getProperty(VERSION_PROPERTY))
+                && specFile.isFile();
+
+        HttpURLConnection connection;
+        int status;
+        try {
+            connection = (HttpURLConnection) new URL(withQueryAuths(location, auths)).openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setRequestProperty("Accept", "application/json");
+            applyHeaderAuths(connection, auths);
+            if (cached) {
+                if (metadata.getProperty(ETAG_PROPERTY) != null) {
+                    connection.setRequestProperty("If-None-Match", metadata.getProperty(ETAG_PROPERTY));
+                }
+                if (metadata.getProperty(LAST_MODIFIED_PROPERTY) != null) {
+                    connection.setRequestProperty("If-Modified-Since", metadata.getProperty(LAST_MODIFIED_PROPERTY));
+                }
+            }
+            status = connection.getResponseCode();
+        } catch (IOException e) {
+            if (!cached || !offlineFallback) {
+                throw e;
+            }
+            LOG.warn("Could not fetch " + location + " (" + e.getMessage() + "), using the cached spec");
+            return readCached(specFile, snapshotFile, auths);
+        }
+
+        try {
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached) {
+                LOG.info("Spec " + location + " is not modified, using the cached spec");
+                return readCached(specFile, snapshotFile, auths);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Could not fetch " + location + ": HTTP " + status + " " + connection.getResponseMessage());
+            }
+
+            LOG.info("Fetching spec " + location);
+            FileUtils.forceMkdir(cacheDir);
+            File download = File.createTempFile(key, SPEC_SUFFIX, cacheDir);
+            try (InputStream in = connection.getInputStream()) {
+                FileUtils.copyInputStreamToFile(in, download);
+                Files.move(download.toPath(), specFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                FileUtils.deleteQuietly(download);
+            }
+            // the snapshot of the previous spec must not survive if anything below fails
+            FileUtils.deleteQuietly(metadataFile);
+
+            Swagger swagger = parse(specFile, auths);
+            writeSnapshot(swagger, snapshotFile);
+
+            Properties updated = new Properties();
+            updated.setProperty(URL_PROPERTY, location);
+            updated.setProperty(VERSION_PROPERTY, ImplementationVersion.read());
+            if (connection.getHeaderField("ETag") != null) {
+                updated.setProperty(ETAG_PROPERTY, connection.getHeaderField("ETag"));
+            }
+            if (connection.getHeaderField("Last-Modified") != null) {
+                updated.setProperty(LAST_MODIFIED_PROPERTY, connection.getHeaderField("Last-Modified"));
+            }
+            try (OutputStream out = new FileOutputStream(metadataFile)) {
+                updated.store(out, null);
+            }
+            return swagger;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * The stock configurator always parses its input spec. When the spec comes from the cache, it is given this
+     * minimal spec instead, and the cached {@link Swagger} is set on the resulting input.
+     */
+    public File getPlaceholderSpec() throws IOException {
+        File placeholder = new File(cacheDir, PLACEHOLDER_SPEC);
+        if (!placeholder.isFile()) {
+            FileUtils.forceMkdir(cacheDir);
+            FileUtils.writeStringToFile(placeholder, "{\"swagger\":\"2.0\",\"info\":{\"title\":\"\",\"version\":\"\"},\"paths\":{}}", "UTF-8");
+        }
+        return placeholder;
+    }
+
+    private Swagger readCached(File specFile, File snapshotFile, List<AuthorizationValue> auths) throws IOException {
+        if (snapshotFile.isFile()) {
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                Swagger swagger = Json.mapper().readValue(in, Swagger.class);
+                restoreComposedModels(swagger);
+                return swagger;
+            } catch (IOException e) {
+                LOG.warn("Could not read spec snapshot " + snapshotFile + ", parsing the cached spec", e);
+            }
+        }
+        Swagger swagger = parse(specFile, auths);
+        writeSnapshot(swagger, snapshotFile);
+        return swagger;
+    }
+
+    private static Swagger parse(File specFile, List<AuthorizationValue> auths) throws IOException {
+        Swagger swagger = new SwaggerParser().read(specFile.getAbsolutePath(), auths, true);
+        if (swagger == null) {
+            throw new IOException("Could not parse spec " + specFile);
+        }
+        return swagger;
+    }
+
+    /**
+     * Returns a deep copy of the spec, e.g. for generators which must not share a spec they may modify.
+     */
+    public static Swagger copy(Swagger swagger) {
+        // convertValue() would return the same instance, as it is already a Swagger
+        Swagger copy;
+        try {
+            copy = Json.mapper().readValue(Json.mapper().writeValueAsBytes(swagger), Swagger.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy spec", e);
+        }
+        restoreComposedModels(copy);
+        return copy;
+    }
+
+    /**
+     * The parser splits allOf of composed models into the referenced interfaces and the inline child,
+     * while the json mapper restores only allOf.
+     */
+    private static void restoreComposedModels(Swagger swagger) {
+        if (swagger.getDefinitions() == null) {
+            return;
+        }
+        for (Model model : swagger.getDefinitions().values()) {
+            if (!(model instanceof ComposedModel) || ((ComposedModel) model).getAllOf() == null) {
+                continue;
+            }
+            ComposedModel composed = (ComposedModel) model;
+            List<RefModel> interfaces = new ArrayList<>();
+            for (Model component : composed.getAllOf()) {
+                if (component instanceof RefModel) {
+                    interfaces.add((RefModel) component);
+                } else {
+                    composed.setChild(component);
+                }
+            }
+            composed.setInterfaces(interfaces);
+        }
+    }
+
+    private static void writeSnapshot(Swagger swagger, File snapshotFile) throws IOException {
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            Json.mapper().writeValue(out, swagger);
+        }
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Properties loadMetadata(File metadataFile) {
+        Properties metadata = new Properties();
+        if (metadataFile.isFile()) {
+            try (InputStream in = new FileInputStream(metadataFile)) {
+                metadata.load(in);
+            } catch (IOException e) {
+                LOG.warn("Could not read spec cache metadata " + metadataFile, e);
+            }
+        }
+        return metadata;
+    }
+
+    private static void applyHeaderAuths(HttpURLConnection connection, List<AuthorizationValue> auths) {
+        if (auths == null) {
+            return;
+        }
+        for (AuthorizationValue auth : auths) {
+            if ("header".equals(auth.getType())) {
+                connection.setRequestProperty(auth.getKeyName(), auth.getValue());
+            }
+        }
+    }
+
+    private static String withQueryAuths(String location, List<AuthorizationValue> auths) throws UnsupportedEncodingException {
+        if (auths == null) {
+            return location;
+        }
+        StringBuilder result = new StringBuilder(location);
+        for (AuthorizationValue auth : auths) {
+            if ("query".equals(auth.getType())) {
+                result.append(result.indexOf("?") < 0 ? '?' : '&')
+                        .append(URLEncoder.encode(auth.getKeyName(), "UTF-8")).append('=')
+                        .append(URLEncoder.encode(auth.getValue(), "UTF-8"));
+            }
+        }
+        return result.toString();
+    }
+
+    private static String toKey(String location) {
+        return GenerationManifest.hash(location).substring(0, 32);
+    }
+}
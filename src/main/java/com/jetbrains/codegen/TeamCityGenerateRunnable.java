@@ -3,15 +3,27 @@ package com.jetbrains.codegen;
 import io.airlift.airline.Command;
 import io.airlift.airline.Option;
 import io.swagger.codegen.ClientOptInput;
+import io.swagger.codegen.InlineModelResolver;
+import io.swagger.codegen.auth.AuthParser;
 import io.swagger.codegen.cmd.Generate;
 import io.swagger.codegen.config.CodegenConfigurator;
 import io.swagger.codegen.config.CodegenConfiguratorUtils;
+import io.swagger.models.Swagger;
+import io.swagger.parser.SwaggerParser;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Command(name = "tc-generate", description = "Generate code with chosen lang")
 public class TeamCityGenerateRunnable extends Generate {
@@ -24,8 +36,7 @@ public class TeamCityGenerateRunnable extends Generate {
     @Option(
             name = {"-l", "--lang"},
             title = "language",
-            required = true,
-            description = "client language to generate (maybe class name in classpath, required)"
+            description = "client language to generate (maybe class name in classpath, required unless --jobs is used)"
     )
     protected String lang;
     @Option(
@@ -209,13 +220,225 @@ public class TeamCityGenerateRunnable extends Generate {
             description = "allow generate model classes using names previously listed on import mappings."
     )
     protected String ignoreImportMappings;
+    @Option(
+            name = {"--threads"},
+            title = "threads",
+            description = "number of threads used to process and render models and APIs. Default is 1 (sequential generation)."
+    )
+    protected Integer threads;
+    @Option(
+            name = {"--writer-threads"},
+            title = "writer threads",
+            description = "number of threads writing the generated files in the background, so that rendering does not wait for slow disks. " +
+                    "Write errors are reported at the end of the run. Default is 0 (files are written by the rendering threads)."
+    )
+    protected Integer writerThreads;
+    @Option(
+            name = {"--incremental"},
+            title = "incremental generation",
+            description = "skip rendering of models, APIs and supporting files whose inputs did not change since the previous run " +
+                    "into the same output directory, and delete files which are no longer generated."
+    )
+    protected Boolean incremental;
+    @Option(
+            name = {"--spec-cache"},
+            title = "spec cache directory",
+            description = "directory where specs fetched over HTTP(S) are cached between runs, together with a snapshot of the parsed spec. " +
+                    "The cached spec is reused while the server reports it as not modified. Default is ~/.swagger-codegen/spec-cache."
+    )
+    protected String specCache;
+    @Option(
+            name = {"--spec-cache-offline"},
+            title = "use cached spec offline",
+            description = "use the cached spec if the server of the input spec can't be reached, instead of failing."
+    )
+    protected Boolean specCacheOffline;
+    @Option(
+            name = {"--skip-spec-cache"},
+            title = "skip spec cache",
+            description = "always fetch and parse the input spec, without using the spec cache."
+    )
+    protected Boolean skipSpecCache;
+    @Option(
+            name = {"--jobs"},
+            title = "jobs file",
+            description = "json file listing several targets to generate from the input spec in a single run, " +
+                    "e.g. {\"targets\": [{\"lang\": \"teamcity-kotlin\", \"output\": \"kotlin\"}, {\"lang\": \"teamcity-docs\", \"output\": \"docs\"}]}. " +
+                    "The spec is fetched and analysed once and the targets are generated concurrently; -l and -o are not used."
+    )
+    protected String jobs;
+    @Option(
+            name = {"--metrics-out"},
+            title = "metrics report",
+            description = "json file to write the timings of the generation to: wall and CPU time and allocated bytes of every phase, " +
+                    "the time spent on every model, operation and API, the slowest models and the largest generated files."
+    )
+    protected String metricsOut;
+
+    private TemplateCache templateCache;
 
     public TeamCityGenerateRunnable() {
         super();
     }
 
     public void run() {
-        CodegenConfigurator configurator = CodegenConfigurator.fromFile(this.configFile);
+        // templates are compiled once per run, also if several targets use them
+        templateCache = new TemplateCache();
+        GenerationMetrics metrics = new GenerationMetrics("tc-generate", StringUtils.isNotEmpty(this.metricsOut));
+        try {
+            if (StringUtils.isNotEmpty(this.jobs)) {
+                runJobs(metrics);
+            } else {
+                runSingle(metrics);
+            }
+        } finally {
+            templateCache = null;
+            metrics.finish();
+            writeMetrics(metrics);
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void runSingle(GenerationMetrics metrics) {
+        CodegenConfigurator configurator = createConfigurator(this.configFile, this.lang, this.output, Collections.<String, String>emptyMap());
+        String inputSpec = configurator.getInputSpec();
+        ClientOptInput clientOptInput;
+        try (GenerationMetrics.Phase phase = metrics.phase("spec")) {
+            Swagger cachedSwagger = readCachedSpec(configurator);
+            clientOptInput = configurator.toClientOptInput();
+            if (cachedSwagger != null) {
+                clientOptInput.swagger(cachedSwagger);
+                clientOptInput.getConfig().setInputSpec(inputSpec);
+            }
+        }
+        TeamCityGenerator generator = createGenerator();
+        generator.setMetrics(metrics.target(clientOptInput.getConfig().getName()));
+        generator.opts(clientOptInput);
+        try (GenerationMetrics.Phase phase = metrics.phase("generate")) {
+            generator.generate();
+        }
+    }
+
+    /**
+     * Generates all targets of the jobs file. The spec is read, flattened and indexed once; every target then generates
+     * from its own copy of it, since generation modifies the spec. Targets are generated concurrently.
+     */
+    @SuppressWarnings("try")
+    private void runJobs(GenerationMetrics metrics) {
+        GenerationJobs generationJobs;
+        try {
+            generationJobs = GenerationJobs.read(new File(this.jobs));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read jobs file " + this.jobs, e);
+        }
+
+        // the spec is shared by all targets, so it is taken from -i or the -c config file
+        CodegenConfigurator specConfigurator = createConfigurator(this.configFile, null, null, Collections.<String, String>emptyMap());
+        String inputSpec = specConfigurator.getInputSpec();
+        if (StringUtils.isEmpty(inputSpec)) {
+            throw new RuntimeException("No input spec for jobs file " + this.jobs + ", set it with -i or in the -c config file");
+        }
+
+        Swagger swagger;
+        try (GenerationMetrics.Phase phase = metrics.phase("spec")) {
+            swagger = readSpec(inputSpec, specConfigurator.getAuth());
+            new InlineModelResolver().flatten(swagger);
+        }
+        ModelGraph modelGraph;
+        try (GenerationMetrics.Phase phase = metrics.phase("modelGraph")) {
+            modelGraph = ModelGraph.build(swagger.getDefinitions());
+        }
+
+        String placeholderSpec;
+        try {
+            placeholderSpec = new SpecCache(getSpecCacheDir()).getPlaceholderSpec().getAbsolutePath();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create placeholder spec", e);
+        }
+
+        // configurators set system properties, so targets are prepared one by one
+        List<TeamCityGenerator> generators = new ArrayList<TeamCityGenerator>();
+        try (GenerationMetrics.Phase phase = metrics.phase("configure")) {
+            for (GenerationJobs.Target target : generationJobs.targets) {
+                String configFile = StringUtils.isNotEmpty(target.configFile) ? target.configFile : this.configFile;
+                CodegenConfigurator configurator = createConfigurator(configFile, target.lang, target.output, target.additionalProperties);
+                if (StringUtils.isNotEmpty(configurator.getInputSpec()) && !inputSpec.equals(configurator.getInputSpec())) {
+                    throw new RuntimeException("Target " + target + " uses spec " + configurator.getInputSpec()
+                            + ", but all targets of a jobs file are generated from " + inputSpec);
+                }
+                configurator.setInputSpec(placeholderSpec);
+                ClientOptInput clientOptInput = configurator.toClientOptInput();
+                clientOptInput.swagger(SpecCache.copy(swagger));
+                clientOptInput.getConfig().setInputSpec(inputSpec);
+
+                TeamCityGenerator generator = createGenerator();
+                generator.setSharedModelGraph(modelGraph);
+                generator.setMetrics(metrics.target(target.toString()));
+                generator.opts(clientOptInput);
+                generators.add(generator);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(generators.size());
+        try (GenerationMetrics.Phase phase = metrics.phase("generate")) {
+            List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+            for (TeamCityGenerator generator : generators) {
+                results.add(executor.submit(generator::generate));
+            }
+
+            RuntimeException failure = null;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Generation was interrupted", e);
+                } catch (ExecutionException e) {
+                    LOG.error("Could not generate " + generationJobs.targets.get(i), e.getCause());
+                    if (failure == null) {
+                        failure = new RuntimeException("Could not generate " + generationJobs.targets.get(i), e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeMetrics(GenerationMetrics metrics) {
+        if (StringUtils.isEmpty(this.metricsOut)) {
+            return;
+        }
+        try {
+            metrics.writeReport(new File(this.metricsOut));
+            LOG.info("Wrote generation metrics to " + this.metricsOut);
+        } catch (IOException e) {
+            LOG.warn("Could not write generation metrics to " + this.metricsOut, e);
+        }
+    }
+
+    private TeamCityGenerator createGenerator() {
+        TeamCityGenerator generator = new TeamCityGenerator();
+        generator.setSharedTemplateCache(templateCache);
+        if (this.threads != null) {
+            generator.setThreads(this.threads);
+        }
+        if (this.writerThreads != null) {
+            generator.setWriterThreads(this.writerThreads);
+        }
+        if (this.incremental != null) {
+            generator.setIncremental(this.incremental);
+        }
+        return generator;
+    }
+
+    private CodegenConfigurator createConfigurator(String configFile, String lang, String output, Map<String, String> targetProperties) {
+        CodegenConfigurator configurator = CodegenConfigurator.fromFile(configFile);
         if (configurator == null) {
             configurator = new CodegenConfigurator();
         }
@@ -232,12 +455,12 @@ public class TeamCityGenerateRunnable extends Generate {
             configurator.setInputSpec(this.spec);
         }
 
-        if (StringUtils.isNotEmpty(this.lang)) {
-            configurator.setLang(this.lang);
+        if (StringUtils.isNotEmpty(lang)) {
+            configurator.setLang(lang);
         }
 
-        if (StringUtils.isNotEmpty(this.output)) {
-            configurator.setOutputDir(this.output);
+        if (StringUtils.isNotEmpty(output)) {
+            configurator.setOutputDir(output);
         }
 
         if (StringUtils.isNotEmpty(this.auth)) {
@@ -308,18 +531,67 @@ public class TeamCityGenerateRunnable extends Generate {
             configurator.setRemoveOperationIdPrefix(this.removeOperationIdPrefix);
         }
 
+        List<String> additionalProperties = new ArrayList<String>(this.additionalProperties);
         if (this.ignoreImportMappings != null) {
-            this.additionalProperties.add(String.format("%s=%s", "ignoreImportMappings", Boolean.parseBoolean(this.ignoreImportMappings)));
+            additionalProperties.add(String.format("%s=%s", "ignoreImportMappings", Boolean.parseBoolean(this.ignoreImportMappings)));
         }
 
         CodegenConfiguratorUtils.applySystemPropertiesKvpList(this.systemProperties, configurator);
         CodegenConfiguratorUtils.applyInstantiationTypesKvpList(this.instantiationTypes, configurator);
         CodegenConfiguratorUtils.applyImportMappingsKvpList(this.importMappings, configurator);
         CodegenConfiguratorUtils.applyTypeMappingsKvpList(this.typeMappings, configurator);
-        CodegenConfiguratorUtils.applyAdditionalPropertiesKvpList(this.additionalProperties, configurator);
+        CodegenConfiguratorUtils.applyAdditionalPropertiesKvpList(additionalProperties, configurator);
         CodegenConfiguratorUtils.applyLanguageSpecificPrimitivesCsvList(this.languageSpecificPrimitives, configurator);
         CodegenConfiguratorUtils.applyReservedWordsMappingsKvpList(this.reservedWordsMappings, configurator);
-        ClientOptInput clientOptInput = configurator.toClientOptInput();
-        (new TeamCityGenerator()).opts(clientOptInput).generate();
+        targetProperties.forEach(configurator::addAdditionalProperty);
+        return configurator;
+    }
+
+    private File getSpecCacheDir() {
+        return StringUtils.isNotEmpty(this.specCache) ? new File(this.specCache) : SpecCache.getDefaultCacheDir();
+    }
+
+    private SpecCache createSpecCache() {
+        SpecCache cache = new SpecCache(getSpecCacheDir());
+        cache.setOfflineFallback(Boolean.TRUE.equals(this.specCacheOffline));
+        return cache;
+    }
+
+    private Swagger readSpec(String inputSpec, String auth) {
+        if (!Boolean.TRUE.equals(this.skipSpecCache) && SpecCache.isCacheable(inputSpec)) {
+            try {
+                return createSpecCache().read(inputSpec, AuthParser.parse(auth));
+            } catch (IOException e) {
+                LOG.warn("Could not use the spec cache, reading " + inputSpec + " directly", e);
+            }
+        }
+        Swagger swagger = new SwaggerParser().read(inputSpec, AuthParser.parse(auth), true);
+        if (swagger == null) {
+            throw new RuntimeException("Could not read spec " + inputSpec);
+        }
+        return swagger;
+    }
+
+    /**
+     * Reads a spec served over HTTP(S) through the {@link SpecCache} and points the configurator to a placeholder spec,
+     * so that the spec is not fetched and parsed again.
+     *
+     * @return the spec, or null if it is not cacheable and has to be read by the configurator
+     */
+    private Swagger readCachedSpec(CodegenConfigurator configurator) {
+        String inputSpec = configurator.getInputSpec();
+        if (Boolean.TRUE.equals(this.skipSpecCache) || !SpecCache.isCacheable(inputSpec)) {
+            return null;
+        }
+
+        SpecCache cache = createSpecCache();
+        try {
+            Swagger swagger = cache.read(inputSpec, AuthParser.parse(configurator.getAuth()));
+            configurator.setInputSpec(cache.getPlaceholderSpec().getAbsolutePath());
+            return swagger;
+        } catch (IOException e) {
+            LOG.warn("Could not use the spec cache, reading " + inputSpec + " directly", e);
+            return null;
+        }
     }
 }
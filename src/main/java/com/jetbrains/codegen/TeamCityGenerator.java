@@ -1,28 +1,436 @@
 package com.jetbrains.codegen;
 
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
 import io.swagger.codegen.CodegenConfig;
+import io.swagger.codegen.CodegenConstants;
 import io.swagger.codegen.CodegenModel;
 import io.swagger.codegen.CodegenOperation;
 import io.swagger.codegen.DefaultGenerator;
 import io.swagger.codegen.languages.AbstractJavaCodegen;
-import io.swagger.models.ComposedModel;
 import io.swagger.models.Model;
 import io.swagger.models.ModelImpl;
-import io.swagger.models.RefModel;
+import io.swagger.models.Operation;
+import io.swagger.models.Path;
 import io.swagger.util.Json;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class TeamCityGenerator extends DefaultGenerator {
 
     protected static final String X_SUBPACKAGE = "x-subpackage";
 
+    private static final String MODEL_KEY_PREFIX = "model:";
+    private static final String API_KEY_PREFIX = "api:";
+    private static final String SUPPORTING_FILES_KEY = "supporting-files";
+
+    private int threads = 1;
+    private int writerThreads;
+    private ForkJoinPool pool;
+    private ModelGraph modelGraph;
+    private ModelGraph sharedModelGraph;
+
+    private boolean incremental;
+    private GenerationManifest manifest;
+    private ManifestInputs manifestInputs;
+    private final Map<String, String> templateNames = new ConcurrentHashMap<String, String>();
+    private GeneratedFileWriter fileWriter;
+    private TemplateCache templateCache;
+    private TemplateCache sharedTemplateCache;
+    private TemplateCache.Statistics templateStatistics;
+    private final Map<String, String> templateContents = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> templateHashes = new ConcurrentHashMap<String, String>();
+    private final Map<String, TemplateCache.CachedTemplate> usedTemplates = new ConcurrentHashMap<String, TemplateCache.CachedTemplate>();
+    private GenerationMetrics metrics;
+
+    /**
+     * Sets the number of worker threads used to process and render models and APIs.
+     * Values below 2 keep the generation sequential.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of threads writing the generated files in the background, see {@link GeneratedFileWriter}.
+     * With 0, the default, files are written by the threads which render them.
+     */
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    /**
+     * Enables incremental generation: models, APIs and supporting files whose inputs did not change since the previous
+     * run are not rendered again, and files which are no longer generated are deleted. See {@link GenerationManifest}.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Sets the model graph of the spec when several targets are generated from copies of the same spec,
+     * so that it is not built again for every target.
+     */
+    public void setSharedModelGraph(ModelGraph sharedModelGraph) {
+        this.sharedModelGraph = sharedModelGraph;
+    }
+
+    /**
+     * Sets the cache of compiled templates when several targets are generated in one run. By default every run of
+     * the generator compiles its templates into a cache of its own.
+     */
+    public void setSharedTemplateCache(TemplateCache sharedTemplateCache) {
+        this.sharedTemplateCache = sharedTemplateCache;
+    }
+
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * Sets the metrics the generation is timed in. Without them the generation only emits JFR events.
+     */
+    public void setMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public List<File> generate() {
+        manifest = null;
+        manifestInputs = null;
+        fileWriter = new GeneratedFileWriter(writerThreads);
+        templateContents.clear();
+        templateHashes.clear();
+        usedTemplates.clear();
+        templateCache = sharedTemplateCache != null ? sharedTemplateCache : new TemplateCache();
+        templateStatistics = new TemplateCache.Statistics();
+        if (metrics == null) {
+            metrics = new GenerationMetrics(config.getName(), false);
+        }
+        if (config instanceof GenerationMetricsAware) {
+            ((GenerationMetricsAware) config).setGenerationMetrics(metrics);
+        }
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+        try {
+            List<File> files = super.generate();
+            try (GenerationMetrics.Phase ignored = metrics.phase("write")) {
+                fileWriter.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            if (manifest != null) {
+                try (GenerationMetrics.Phase ignored = metrics.phase("manifest")) {
+                    saveManifest();
+                }
+            }
+            LOGGER.info("Generated files: " + fileWriter.getWrittenCount() + " written, " +
+                    fileWriter.getUnchangedCount() + " unchanged, " + fileWriter.getDeletedCount() + " deleted");
+            LOGGER.info("Template cache: " + templateStatistics.getHits() + " hits, " + templateStatistics.getMisses() + " misses");
+            return files;
+        } finally {
+            metrics.putSummary("threads", threads);
+            metrics.putSummary("writerThreads", writerThreads);
+            metrics.putSummary("filesWritten", fileWriter.getWrittenCount());
+            metrics.putSummary("filesUnchanged", fileWriter.getUnchangedCount());
+            metrics.putSummary("filesDeleted", fileWriter.getDeletedCount());
+            metrics.putSummary("templateCacheHits", templateStatistics.getHits());
+            metrics.putSummary("templateCacheMisses", templateStatistics.getMisses());
+            metrics.finish();
+            fileWriter.shutdown();
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    public ModelGraph getModelGraph() {
+        return modelGraph;
+    }
+
+    /**
+     * Applies {@code action} to each item, on the generation pool if parallel generation is enabled.
+     * Results are returned in the order of {@code items}, so they can be merged deterministically.
+     */
+    protected <T, R> List<R> mapOrdered(List<T> items, boolean parallel, Function<T, R> action) {
+        if (pool == null || !parallel || items.size() < 2) {
+            return items.stream().map(action).collect(Collectors.toList());
+        }
+
+        Function<T, R> workerAction = item -> metrics.onWorker(() -> action.apply(item));
+        try {
+            return pool.submit(() -> items.parallelStream().map(workerAction).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Generation was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void prepareManifest() {
+        // must be called before models are processed: processing may enrich the definitions
+        manifest = GenerationManifest.load(config.outputFolder());
+        manifestInputs = new ManifestInputs(swagger, modelGraph, config, Arrays.asList(
+                "models=" + isGenerateModels, "apis=" + isGenerateApis, "supportingFiles=" + isGenerateSupportingFiles,
+                "modelTests=" + isGenerateModelTests, "modelDocs=" + isGenerateModelDocumentation,
+                "apiTests=" + isGenerateApiTests, "apiDocs=" + isGenerateApiDocumentation,
+                "models=" + System.getProperty("models"), "apis=" + System.getProperty("apis"),
+                "supportingFiles=" + System.getProperty("supportingFiles")
+        ));
+        manifest.init(manifestInputs.getConfigHash(), templateName -> {
+            try {
+                String path = super.getFullTemplateFile(config, templateName);
+                return GenerationManifest.hash(path, IOUtils.toString(super.getTemplateReader(path)));
+            } catch (Exception e) {
+                return null;
+            }
+        });
+    }
+
+    private void saveManifest() {
+        // partials of cached templates are not read again, so take them from the cache
+        for (Map.Entry<String, TemplateCache.CachedTemplate> template : usedTemplates.entrySet()) {
+            manifest.recordTemplate(template.getKey(), template.getValue().getContentHash());
+            template.getValue().getPartialHashes().forEach(manifest::recordTemplate);
+        }
+        try {
+            manifest.save(fileWriter, key -> key.equals(SUPPORTING_FILES_KEY)
+                    || key.startsWith(MODEL_KEY_PREFIX) && modelGraph.contains(key.substring(MODEL_KEY_PREFIX.length()))
+                    || key.startsWith(API_KEY_PREFIX) && manifestInputs.getApiTags().contains(key.substring(API_KEY_PREFIX.length())));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save generation manifest", e);
+        }
+    }
+
+    /**
+     * Runs {@code generation} unless incremental generation is enabled and the inputs of the unit are unchanged,
+     * in which case the files generated for it by the previous run are returned.
+     */
+    private List<File> generateIfChanged(String key, String inputHash, Callable<List<File>> generation) throws Exception {
+        if (manifest == null || inputHash == null) {
+            return generation.call();
+        }
+
+        List<File> upToDate = manifest.getUpToDateFiles(key, inputHash);
+        if (upToDate != null) {
+            LOGGER.debug("Skipped up-to-date " + key);
+            return upToDate;
+        }
+        List<File> files = generation.call();
+        manifest.record(key, inputHash, files);
+        return files;
+    }
+
+    /**
+     * Same as the default implementation, but the template is compiled once through the {@link TemplateCache}
+     * and rendered straight into the {@link GeneratedFileWriter}.
+     */
+    @Override
+    protected File processTemplateToFile(Map<String, Object> templateData, String templateName, String outputFilename) throws IOException {
+        String adjustedOutputFilename = outputFilename.replaceAll("//", "/").replace('/', File.separatorChar);
+        if (!ignoreProcessor.allowsFile(new File(adjustedOutputFilename))) {
+            LOGGER.info("Skipped generation of " + adjustedOutputFilename + " due to rule in .swagger-codegen-ignore");
+            return null;
+        }
+
+        try (GenerationMetrics.Span span = metrics.file(adjustedOutputFilename)) {
+            Template tmpl = getCompiledTemplate(templateName);
+            if (fileWriter != null && fileWriter.isAsynchronous()) {
+                // the file is written in the background, it may not exist yet
+                byte[] content = tmpl.execute(templateData).getBytes(StandardCharsets.UTF_8);
+                span.setBytes(content.length);
+                return fileWriter.write(adjustedOutputFilename, content);
+            }
+            File written = fileWriter == null
+                    ? writeToFile(adjustedOutputFilename, tmpl.execute(templateData))
+                    : fileWriter.write(adjustedOutputFilename, writer -> tmpl.execute(templateData, writer));
+            span.setBytes(written.length());
+            return written;
+        }
+    }
+
+    private Template getCompiledTemplate(String templateName) {
+        String context = config.getClass().getName() + '\0' + config.templateDir() + '\0' + config.embeddedTemplateDir() + '\0' + config.getLibrary();
+        TemplateCache.CachedTemplate cached = templateCache.get(templateName, context, new TemplateCache.TemplateSource() {
+            @Override
+            public String getPath(String name) {
+                return getFullTemplateFile(config, name);
+            }
+
+            @Override
+            public String getContent(String path) {
+                getHash(path);
+                return templateContents.get(path);
+            }
+
+            @Override
+            public String getHash(String path) {
+                return templateHashes.computeIfAbsent(path, p -> {
+                    String content = readTemplate(p);
+                    templateContents.put(p, content);
+                    return GenerationManifest.hash(p, content);
+                });
+            }
+
+            @Override
+            public Mustache.Compiler getCompiler() {
+                return config.processCompiler(Mustache.compiler()).defaultValue("");
+            }
+        }, templateStatistics);
+        usedTemplates.put(templateName, cached);
+        return cached.getTemplate();
+    }
+
+    @Override
+    public File writeToFile(String filename, String contents) throws IOException {
+        if (fileWriter == null) {
+            return super.writeToFile(filename, contents);
+        }
+        return fileWriter.write(filename, contents);
+    }
+
+    @Override
+    public String getFullTemplateFile(CodegenConfig config, String templateFile) {
+        String path = super.getFullTemplateFile(config, templateFile);
+        if (incremental) {
+            templateNames.put(path, templateFile);
+        }
+        return path;
+    }
+
+    @Override
+    public Reader getTemplateReader(String name) {
+        if (manifest == null || !templateNames.containsKey(name)) {
+            return super.getTemplateReader(name);
+        }
+
+        // remember the content of every template used, so that template changes invalidate generated files
+        try (Reader reader = super.getTemplateReader(name)) {
+            String content = IOUtils.toString(reader);
+            manifest.recordTemplate(templateNames.get(name), GenerationManifest.hash(name, content));
+            return new StringReader(content);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read template " + name, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    protected void configureGeneratorProperties() {
+        try (GenerationMetrics.Phase ignored = metrics.phase("configure")) {
+            super.configureGeneratorProperties();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    protected Map<String, Object> buildSupportFileBundle(List<Object> allOperations, List<Object> allModels) {
+        try (GenerationMetrics.Phase ignored = metrics.phase("supportingFiles.process")) {
+            return super.buildSupportFileBundle(allOperations, allModels);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    protected void generateSupportingFiles(List<File> files, Map<String, Object> bundle) {
+        try (GenerationMetrics.Phase ignored = metrics.phase("supportingFiles.render")) {
+            files.addAll(generateIfChanged(SUPPORTING_FILES_KEY, manifestInputs == null ? null : manifestInputs.getSupportingFilesHash(), () -> {
+                List<File> supportingFiles = new ArrayList<File>();
+                super.generateSupportingFiles(supportingFiles, bundle);
+                // the ignore file is only reported when it is created, but it belongs to the output all the same
+                File ignoreFile = new File(config.outputFolder(), ".swagger-codegen-ignore");
+                if (ignoreFile.exists() && !supportingFiles.contains(ignoreFile)) {
+                    supportingFiles.add(ignoreFile);
+                }
+                if (config instanceof AssetProvider) {
+                    generateAssets(supportingFiles, ((AssetProvider) config).getAssets());
+                }
+                return supportingFiles;
+            }));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not generate supporting files", e);
+        }
+    }
+
+    /**
+     * Writes the assets of an {@link AssetProvider}, honouring the same filters as the supporting files.
+     */
+    private void generateAssets(List<File> files, Map<String, String> assets) {
+        if (!isGenerateSupportingFiles || assets.isEmpty()) {
+            return;
+        }
+        String supportingFilesFilter = System.getProperty(CodegenConstants.SUPPORTING_FILES);
+        Set<String> assetsToGenerate = supportingFilesFilter == null || supportingFilesFilter.isEmpty()
+                ? null : new HashSet<String>(Arrays.asList(supportingFilesFilter.split(",")));
+
+        List<String> paths = new ArrayList<String>();
+        for (String path : new TreeSet<String>(assets.keySet())) {
+            if (assetsToGenerate != null && !assetsToGenerate.contains(path)) {
+                continue;
+            }
+            if (!ignoreProcessor.allowsFile(new File(config.outputFolder(), path))) {
+                LOGGER.info("Skipped generation of " + path + " due to rule in .swagger-codegen-ignore");
+                continue;
+            }
+            paths.add(path);
+        }
+        List<File> written = mapOrdered(paths, true, path -> {
+            String filename = config.outputFolder() + File.separator + path.replace('/', File.separatorChar);
+            try (GenerationMetrics.Span span = metrics.file(filename)) {
+                byte[] content = assets.get(path).getBytes(StandardCharsets.UTF_8);
+                span.setBytes(content.length);
+                return fileWriter.write(filename, content);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write " + filename, e);
+            }
+        });
+        files.addAll(written);
+    }
+
     @Override
+    @SuppressWarnings("try")
     protected void generateModels(List<File> files, List<Object> allModels) {
 
+        // inline models are flattened by now, so the graph covers every definition used by models and operations
+        try (GenerationMetrics.Phase ignored = metrics.phase("modelGraph")) {
+            modelGraph = sharedModelGraph != null
+                    ? sharedModelGraph.withDefinitions(swagger.getDefinitions())
+                    : ModelGraph.build(swagger.getDefinitions());
+            if (config instanceof ModelGraphAware) {
+                ((ModelGraphAware) config).setModelGraph(modelGraph);
+            }
+            if (incremental) {
+                prepareManifest();
+            }
+        }
+
         if (!isGenerateModels) {
             return;
         }
@@ -49,85 +457,81 @@ public class TeamCityGenerator extends DefaultGenerator {
             modelKeys = updatedKeys;
         }
 
-        // store all processed models
-        Map<String, Object> allProcessedModels = new TreeMap<String, Object>(new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                Model model1 = definitions.get(o1);
-                Model model2 = definitions.get(o2);
-
-                int model1InheritanceDepth = getInheritanceDepth(model1);
-                int model2InheritanceDepth = getInheritanceDepth(model2);
-
-                if (model1InheritanceDepth == model2InheritanceDepth) {
-                    return ObjectUtils.compare(config.toModelName(o1), config.toModelName(o2));
-                } else if (model1InheritanceDepth > model2InheritanceDepth) {
-                    return 1;
-                } else {
-                    return -1;
-                }
-            }
-
-            private int getInheritanceDepth(Model model) {
-                int inheritanceDepth = 0;
-                Model parent = getParent(model);
+        // store all processed models, ordered by inheritance depth and then by model name
+        final Map<String, String> classNames = new HashMap<String, String>();
+        for (String name : modelKeys) {
+            classNames.put(name, config.toModelName(name));
+        }
+        Map<String, Object> allProcessedModels = new TreeMap<String, Object>((o1, o2) -> {
+            int model1InheritanceDepth = modelGraph.getInheritanceDepth(o1);
+            int model2InheritanceDepth = modelGraph.getInheritanceDepth(o2);
 
-                while (parent != null) {
-                    inheritanceDepth++;
-                    parent = getParent(parent);
-                }
+            if (model1InheritanceDepth == model2InheritanceDepth) {
+                return ObjectUtils.compare(classNames.get(o1), classNames.get(o2));
+            } else if (model1InheritanceDepth > model2InheritanceDepth) {
+                return 1;
+            } else {
+                return -1;
+            }
+        });
 
-                return inheritanceDepth;
+        // process models only
+        List<String> modelsToProcess = new ArrayList<String>();
+        for (String name : modelKeys) {
+            //don't generate models that have an import mapping
+            if (config.importMapping().containsKey(name)) {
+                LOGGER.info("Model " + name + " not imported due to import mapping");
+                continue;
             }
+            modelsToProcess.add(name);
+        }
 
-            private Model getParent(Model model) {
-                if (model instanceof ComposedModel) {
-                    Model parent = ((ComposedModel) model).getParent();
-                    if (parent == null) {
-                        // check for interfaces
-                        List<RefModel> interfaces = ((ComposedModel) model).getInterfaces();
-                        if (interfaces.size() > 0) {
-                            RefModel interf = interfaces.get(0);
-                            return definitions.get(interf.getSimpleRef());
-                        }
-                    }
-                    if (parent != null) {
-                        return definitions.get(parent.getReference());
+        if (config instanceof ModelPreparer) {
+            try (GenerationMetrics.Phase phase = metrics.phase("models.prepare")) {
+                mapOrdered(modelsToProcess, true, name -> {
+                    try {
+                        ((ModelPreparer) config).prepareModel(name, definitions.get(name));
+                        return null;
+                    } catch (Exception e) {
+                        throw new RuntimeException("Could not prepare model '" + name + "'", e);
                     }
-                }
-
-                return null;
+                });
             }
-        });
+        }
 
-        // process models only
-        for (String name : modelKeys) {
-            try {
-                //don't generate models that have an import mapping
-                if (config.importMapping().containsKey(name)) {
-                    LOGGER.info("Model " + name + " not imported due to import mapping");
-                    continue;
-                }
-                Model model = definitions.get(name);
-                Map<String, Model> modelMap = new HashMap<String, Model>();
-                modelMap.put(name, model);
-                Map<String, Object> models = processModels(config, modelMap, definitions);
-                if (models != null) {
-                    models.put("classname", config.toModelName(name));
-                    models.putAll(config.additionalProperties());
-                    allProcessedModels.put(name, models);
+        List<Map<String, Object>> processedModels;
+        try (GenerationMetrics.Phase phase = metrics.phase("models.process")) {
+            processedModels = mapOrdered(modelsToProcess, true, name -> {
+                try (GenerationMetrics.Span ignored = metrics.model(name, GenerationMetrics.PROCESS)) {
+                    Model model = definitions.get(name);
+                    Map<String, Model> modelMap = new HashMap<String, Model>();
+                    modelMap.put(name, model);
+                    Map<String, Object> models = processModels(config, modelMap, definitions);
+                    if (models != null) {
+                        models.put("classname", classNames.get(name));
+                        models.putAll(config.additionalProperties());
+                    }
+                    return models;
+                } catch (Exception e) {
+                    String message = "Could not process model '" + name + "'" + ". Please make sure that your schema is correct!";
+                    LOGGER.error(message, e);
+                    throw new RuntimeException(message, e);
                 }
-            } catch (Exception e) {
-                String message = "Could not process model '" + name + "'" + ". Please make sure that your schema is correct!";
-                LOGGER.error(message, e);
-                throw new RuntimeException(message, e);
+            });
+        }
+        for (int i = 0; i < modelsToProcess.size(); i++) {
+            if (processedModels.get(i) != null) {
+                allProcessedModels.put(modelsToProcess.get(i), processedModels.get(i));
             }
         }
 
         // post process all processed models
-        allProcessedModels = config.postProcessAllModels(allProcessedModels);
+        try (GenerationMetrics.Phase ignored = metrics.phase("models.postProcess")) {
+            allProcessedModels = config.postProcessAllModels(allProcessedModels);
+        }
 
-        // generate files based on processed models
+        // collect models to generate, keeping the order established by post processing
+        List<String> modelsToRender = new ArrayList<String>();
         for (String modelName : allProcessedModels.keySet()) {
             Map<String, Object> models = (Map<String, Object>) allProcessedModels.get(modelName);
             models.put("modelPackage", config.modelPackage());
@@ -147,43 +551,227 @@ public class TeamCityGenerator extends DefaultGenerator {
                     }
                 }
                 allModels.add(modelTemplate);
-                for (String templateName : config.modelTemplateFiles().keySet()) {
-                    String suffix = config.modelTemplateFiles().get(templateName);
-
-                    Model rawModel = definitions.get(modelName);
-                    Map<String, Object> extensions = rawModel.getVendorExtensions();
-                    String filename;
-                    if (extensions.containsKey(X_SUBPACKAGE) && !extensions.get(X_SUBPACKAGE).toString().isEmpty()) {
-                        filename = config.modelFileFolder() + File.separator + extensions.get(X_SUBPACKAGE).toString() +
-                                File.separator + config.toModelFilename(modelName) + suffix;
-                    } else {
-                        filename = config.modelFileFolder() + File.separator + config.toModelFilename(modelName) + suffix;
-                    }
-
-                    if (!config.shouldOverwrite(filename)) {
-                        LOGGER.info("Skipped overwriting " + filename);
-                        continue;
-                    }
-                    File written = processTemplateToFile(models, templateName, filename);
-                    if (written != null) {
-                        files.add(written);
-                    }
-                }
-                if (isGenerateModelTests) {
-                    generateModelTests(files, models, modelName);
-                }
-                if (isGenerateModelDocumentation) {
-                    // to generate model documentation files
-                    generateModelDocumentation(files, models, modelName);
-                }
+                modelsToRender.add(modelName);
             } catch (Exception e) {
                 throw new RuntimeException("Could not generate model '" + modelName + "'", e);
             }
         }
+
+        // generate files based on processed models
+        final Map<String, Object> processedModelsByName = allProcessedModels;
+        List<List<File>> writtenFiles;
+        try (GenerationMetrics.Phase phase = metrics.phase("models.render")) {
+            writtenFiles = mapOrdered(modelsToRender, true, modelName -> {
+                try (GenerationMetrics.Span ignored = metrics.model(modelName, GenerationMetrics.RENDER)) {
+                    return generateIfChanged(MODEL_KEY_PREFIX + modelName, manifestInputs == null ? null : manifestInputs.getModelHash(modelName), () -> generateModelFiles(modelName, (Map<String, Object>) processedModelsByName.get(modelName)));
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not generate model '" + modelName + "'", e);
+                }
+            });
+        }
+        writtenFiles.forEach(files::addAll);
+
         if (System.getProperty("debugModels") != null) {
             LOGGER.info("############ Model info ############");
             Json.prettyPrint(allModels);
         }
 
     }
-}
\ No newline at end of file
+
+    private List<File> generateModelFiles(String modelName, Map<String, Object> models) throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (String templateName : config.modelTemplateFiles().keySet()) {
+            String suffix = config.modelTemplateFiles().get(templateName);
+
+            String subpackage = config instanceof ModelSubpackageLayout ? modelGraph.getSubpackage(modelName) : null;
+            String filename;
+            if (subpackage != null && !subpackage.isEmpty()) {
+                filename = config.modelFileFolder() + File.separator + subpackage +
+                        File.separator + config.toModelFilename(modelName) + suffix;
+            } else {
+                filename = config.modelFileFolder() + File.separator + config.toModelFilename(modelName) + suffix;
+            }
+
+            if (!config.shouldOverwrite(filename)) {
+                LOGGER.info("Skipped overwriting " + filename);
+                continue;
+            }
+            File written = processTemplateToFile(models, templateName, filename);
+            if (written != null) {
+                files.add(written);
+            }
+        }
+        if (isGenerateModelTests) {
+            generateModelTests(files, models, modelName);
+        }
+        if (isGenerateModelDocumentation) {
+            // to generate model documentation files
+            generateModelDocumentation(files, models, modelName);
+        }
+        return files;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    protected void generateApis(List<File> files, List<Object> allOperations, List<Object> allModels) {
+        if (!isGenerateApis) {
+            return;
+        }
+
+        Map<String, List<CodegenOperation>> paths;
+        List<String> tags;
+        List<Map<String, Object>> processedApis;
+        try (GenerationMetrics.Phase phase = metrics.phase("apis.process")) {
+            paths = processPaths(swagger.getPaths());
+            Set<String> apisToGenerate = null;
+            String apiNames = System.getProperty("apis");
+            if (apiNames != null && !apiNames.isEmpty()) {
+                apisToGenerate = new HashSet<String>(Arrays.asList(apiNames.split(",")));
+            }
+            if (apisToGenerate != null && !apisToGenerate.isEmpty()) {
+                Map<String, List<CodegenOperation>> updatedPaths = new TreeMap<String, List<CodegenOperation>>();
+                for (String m : paths.keySet()) {
+                    if (apisToGenerate.contains(m)) {
+                        updatedPaths.put(m, paths.get(m));
+                    }
+                }
+                paths = updatedPaths;
+            }
+
+            // process operations of every tag
+            final Map<String, List<CodegenOperation>> operationsByTag = paths;
+            tags = new ArrayList<String>(paths.keySet());
+            processedApis = mapOrdered(tags, true, tag -> {
+                try (GenerationMetrics.Span ignored = metrics.api(tag, GenerationMetrics.PROCESS)) {
+                    List<CodegenOperation> ops = operationsByTag.get(tag);
+                    ops.sort((one, another) -> ObjectUtils.compare(one.operationId, another.operationId));
+                    return processApi(tag, ops, allModels);
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not generate api file for '" + tag + "'", e);
+                }
+            });
+        }
+
+        Map<String, Map<String, Object>> apisByTag = new HashMap<String, Map<String, Object>>();
+        for (int i = 0; i < tags.size(); i++) {
+            Map<String, Object> operation = processedApis.get(i);
+            apisByTag.put(tags.get(i), operation);
+
+            if (!allOperations.isEmpty()) {
+                ((Map<String, Object>) allOperations.get(allOperations.size() - 1)).put("hasMore", "true");
+            }
+            allOperations.add(new HashMap<String, Object>(operation));
+        }
+
+        // generate files based on processed operations
+        List<List<File>> writtenFiles;
+        try (GenerationMetrics.Phase phase = metrics.phase("apis.render")) {
+            writtenFiles = mapOrdered(tags, true, tag -> {
+                try (GenerationMetrics.Span ignored = metrics.api(tag, GenerationMetrics.RENDER)) {
+                    return generateIfChanged(API_KEY_PREFIX + tag, manifestInputs == null ? null : manifestInputs.getApiHash(tag), () -> generateApiFiles(tag, apisByTag.get(tag)));
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not generate api file for '" + tag + "'", e);
+                }
+            });
+        }
+        writtenFiles.forEach(files::addAll);
+
+        if (System.getProperty("debugOperations") != null) {
+            LOGGER.info("############ Operation info ############");
+            Json.prettyPrint(allOperations);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    protected void processOperation(String resourcePath, String httpMethod, Operation operation, Map<String, List<CodegenOperation>> operations, Path path) {
+        if (operation == null) {
+            super.processOperation(resourcePath, httpMethod, operation, operations, path);
+            return;
+        }
+        try (GenerationMetrics.Span ignored = metrics.operation(httpMethod.toUpperCase(Locale.ROOT) + " " + resourcePath, GenerationMetrics.PROCESS)) {
+            super.processOperation(resourcePath, httpMethod, operation, operations, path);
+        }
+    }
+
+    private Map<String, Object> processApi(String tag, List<CodegenOperation> ops, List<Object> allModels) {
+        Map<String, Object> operation = processOperations(config, tag, ops, allModels);
+
+        operation.put("basePath", basePath);
+        operation.put("basePathWithoutHost", basePathWithoutHost);
+        operation.put("contextPath", contextPath);
+        operation.put("baseName", tag);
+        operation.put("apiPackage", config.apiPackage());
+        operation.put("modelPackage", config.modelPackage());
+        operation.putAll(config.additionalProperties());
+        operation.put("classname", config.toApiName(tag));
+        operation.put("classVarName", config.toApiVarName(tag));
+        operation.put("importPath", config.toApiImport(tag));
+        operation.put("classFilename", config.toApiFilename(tag));
+
+        if (!config.vendorExtensions().isEmpty()) {
+            operation.put("vendorExtensions", config.vendorExtensions());
+        }
+
+        // Pass sortParamsByRequiredFlag through to the Mustache template...
+        boolean sortParamsByRequiredFlag = true;
+        if (this.config.additionalProperties().containsKey(CodegenConstants.SORT_PARAMS_BY_REQUIRED_FLAG)) {
+            sortParamsByRequiredFlag = Boolean.valueOf(this.config.additionalProperties().get(CodegenConstants.SORT_PARAMS_BY_REQUIRED_FLAG).toString());
+        }
+        operation.put("sortParamsByRequiredFlag", sortParamsByRequiredFlag);
+
+        processMimeTypes(swagger.getConsumes(), operation, "consumes");
+        processMimeTypes(swagger.getProduces(), operation, "produces");
+        return operation;
+    }
+
+    private List<File> generateApiFiles(String tag, Map<String, Object> operation) throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (String templateName : config.apiTemplateFiles().keySet()) {
+            String filename = config.apiFilename(templateName, tag);
+            if (!config.shouldOverwrite(filename) && new File(filename).exists()) {
+                LOGGER.info("Skipped overwriting " + filename);
+                continue;
+            }
+
+            File written = processTemplateToFile(operation, templateName, filename);
+            if (written != null) {
+                files.add(written);
+            }
+        }
+
+        if (isGenerateApiTests) {
+            // to generate api test files
+            for (String templateName : config.apiTestTemplateFiles().keySet()) {
+                String filename = config.apiTestFilename(templateName, tag);
+                // do not overwrite test file that already exists
+                if (new File(filename).exists()) {
+                    LOGGER.info("File exists. Skipped overwriting " + filename);
+                    continue;
+                }
+
+                File written = processTemplateToFile(operation, templateName, filename);
+                if (written != null) {
+                    files.add(written);
+                }
+            }
+        }
+
+        if (isGenerateApiDocumentation) {
+            // to generate api documentation files
+            for (String templateName : config.apiDocTemplateFiles().keySet()) {
+                String filename = config.apiDocFilename(templateName, tag);
+                if (!config.shouldOverwrite(filename) && new File(filename).exists()) {
+                    LOGGER.info("Skipped overwriting " + filename);
+                    continue;
+                }
+
+                File written = processTemplateToFile(operation, templateName, filename);
+                if (written != null) {
+                    files.add(written);
+                }
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,192 @@
+package com.jetbrains.codegen;
+
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache of compiled mustache templates, keyed by the resolved template path and the hash of its content.
+ * <p>
+ * The partials of a template are read when it is compiled, so a compiled {@link Template} neither parses nor reads
+ * anything again and rendering is the only per-file cost. A cached template is only reused while its partials are
+ * unchanged as well. Compiled templates do not refer to the generator which compiled them, so the cache can be shared
+ * by the generators of one tc-generate run; it is safe for concurrent use.
+ */
+public class TemplateCache {
+    private static final String TEMPLATE_EXTENSION = ".mustache";
+
+    private final Map<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Where a generator reads its templates from.
+     */
+    public interface TemplateSource {
+        /**
+         * @return resolved path of a template, e.g. of {@code model.mustache}
+         */
+        String getPath(String templateName);
+
+        String getContent(String path);
+
+        /**
+         * @return hash of the content of a template, as recorded in the {@link GenerationManifest}
+         */
+        String getHash(String path);
+
+        /**
+         * @return the compiler for the templates, its loader is replaced
+         */
+        Mustache.Compiler getCompiler();
+    }
+
+    /**
+     * Counts the lookups of one generator.
+     */
+    public static class Statistics {
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+
+        public int getHits() {
+            return hits.get();
+        }
+
+        public int getMisses() {
+            return misses.get();
+        }
+    }
+
+    /**
+     * @param templateName name of the template, e.g. {@code model.mustache}
+     * @param context      anything else the compiled template depends on, e.g. the codegen and its template directories
+     */
+    public CachedTemplate get(String templateName, String context, TemplateSource source, Statistics statistics) {
+        String path = source.getPath(templateName);
+        String contentHash = source.getHash(path);
+        String key = path + '\0' + contentHash + '\0' + context;
+        CachedTemplate cached = templates.get(key);
+        if (cached != null && cached.isCurrent(source)) {
+            statistics.hits.incrementAndGet();
+            return cached;
+        }
+
+        boolean[] compiled = new boolean[1];
+        cached = templates.compute(key, (k, existing) -> {
+            if (existing != null && existing.isCurrent(source)) {
+                return existing;
+            }
+            compiled[0] = true;
+            return compile(path, contentHash, source);
+        });
+        (compiled[0] ? statistics.misses : statistics.hits).incrementAndGet();
+        return cached;
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+
+    private static CachedTemplate compile(String path, String contentHash, TemplateSource source) {
+        String content = source.getContent(path);
+        Map<String, String> partials = new HashMap<>();
+        Map<String, String> partialHashes = new TreeMap<>();
+        Deque<String> pending = new ArrayDeque<>(findPartials(content));
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (partials.containsKey(name)) {
+                continue;
+            }
+            // resolved like the default generator does
+            String partialPath = source.getPath(name + TEMPLATE_EXTENSION);
+            String partial = source.getContent(partialPath);
+            partials.put(name, partial);
+            partialHashes.put(name + TEMPLATE_EXTENSION, source.getHash(partialPath));
+            pending.addAll(findPartials(partial));
+        }
+
+        Template template = source.getCompiler()
+                .withLoader(name -> {
+                    String partial = partials.get(name);
+                    if (partial == null) {
+                        throw new IOException("Partial " + name + " of template " + path + " was not found when compiling it");
+                    }
+                    return new StringReader(partial);
+                })
+                .compile(content);
+        return new CachedTemplate(path, contentHash, Collections.unmodifiableMap(partialHashes), template);
+    }
+
+    /**
+     * @return names of the partials included by a template, following changes of the delimiters
+     */
+    static List<String> findPartials(String template) {
+        List<String> partials = new ArrayList<>();
+        String open = "{{";
+        String close = "}}";
+        int position = 0;
+        while (true) {
+            int start = template.indexOf(open, position);
+            int end = start < 0 ? -1 : template.indexOf(close, start + open.length());
+            if (end < 0) {
+                return partials;
+            }
+            String tag = template.substring(start + open.length(), end);
+            position = end + close.length();
+            if (tag.startsWith(">")) {
+                partials.add(tag.substring(1).trim());
+            } else if (tag.length() > 1 && tag.startsWith("=") && tag.endsWith("=")) {
+                String[] delimiters = tag.substring(1, tag.length() - 1).trim().split("\\s+");
+                if (delimiters.length == 2) {
+                    open = delimiters[0];
+                    close = delimiters[1];
+                }
+            }
+        }
+    }
+
+    public static class CachedTemplate {
+        private final String path;
+        private final String contentHash;
+        private final Map<String, String> partialHashes;
+        private final Template template;
+
+        private CachedTemplate(String path, String contentHash, Map<String, String> partialHashes, Template template) {
+            this.path = path;
+            this.contentHash = contentHash;
+            this.partialHashes = partialHashes;
+            this.template = template;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public Template getTemplate() {
+            return template;
+        }
+
+        /**
+         * @return hashes of all partials included by the template, directly or through other partials, by template name
+         */
+        public Map<String, String> getPartialHashes() {
+            return partialHashes;
+        }
+
+        private boolean isCurrent(TemplateSource source) {
+            for (Map.Entry<String, String> partial : partialHashes.entrySet()) {
+                if (!partial.getValue().equals(source.getHash(source.getPath(partial.getKey())))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.jetbrains.codegen.docs;
+
+/**
+ * Limits of the size of a single JSON or XML example.
+ * <p>
+ * Examples expand the models they reference, so without limits their size grows with the model graph. Once a limit
+ * is reached, nested models are written as links to their docs ({@code [[[Model...|model.md]]]}) instead of being
+ * expanded. The limits are only checked where a nested model starts, so an example may exceed the node and length
+ * limits by the properties of the model which is being written; the truncation only depends on the model graph.
+ */
+public final class ExampleBudget {
+    public static final int DEFAULT_MAX_DEPTH = 2;
+    public static final int DEFAULT_MAX_NODES = 500;
+    public static final int DEFAULT_MAX_LENGTH = 10_000;
+
+    public static final ExampleBudget DEFAULT = new ExampleBudget(DEFAULT_MAX_DEPTH, DEFAULT_MAX_NODES, DEFAULT_MAX_LENGTH);
+
+    private final int maxDepth;
+    private final int maxNodes;
+    private final int maxLength;
+
+    /**
+     * @param maxDepth  number of nested model levels which are expanded below the model of the example
+     *                  (the default 2 expands the model and the models it references)
+     * @param maxNodes  number of values (JSON) or attributes and elements (XML) after which nested models are linked
+     * @param maxLength number of characters after which nested models are linked
+     */
+    public ExampleBudget(int maxDepth, int maxNodes, int maxLength) {
+        if (maxDepth < 1 || maxNodes < 1 || maxLength < 1) {
+            throw new IllegalArgumentException("Example limits must be positive: maxDepth=" + maxDepth
+                    + ", maxNodes=" + maxNodes + ", maxLength=" + maxLength);
+        }
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.maxLength = maxLength;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Whether a model nested {@code level} levels deep is written as a link, after {@code nodes} nodes and
+     * {@code length} characters of the example have been written. The model of the example itself (level 0) is
+     * always expanded.
+     */
+    boolean isExhausted(int level, int nodes, int length) {
+        return level > 0 && (level >= maxDepth || nodes >= maxNodes || length >= maxLength);
+    }
+
+    @Override
+    public String toString() {
+        return "maxDepth=" + maxDepth + ", maxNodes=" + maxNodes + ", maxLength=" + maxLength;
+    }
+}
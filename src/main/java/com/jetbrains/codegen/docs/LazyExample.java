@@ -0,0 +1,40 @@
+package com.jetbrains.codegen.docs;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.function.Supplier;
+
+/**
+ * An example which is only generated once a template renders it, so templates which don't show examples don't pay
+ * for them. Templates render values with {@link #toString()}, so {@code {{{vendorExtensions.x-json-example}}}} works
+ * as with a string. A section on the value is always entered, though, even if the example turns out to be empty.
+ * <p>
+ * The example is generated at most once, and the value is safe to render from several threads.
+ */
+public class LazyExample {
+    private Supplier<String> supplier;
+    private String example;
+
+    public LazyExample(Supplier<String> supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * @return the example, or an empty string if there is none
+     */
+    @JsonValue
+    public synchronized String get() {
+        if (supplier != null) {
+            String generated = supplier.get();
+            example = generated == null ? "" : generated;
+            // the supplier holds the definitions, it is not needed anymore
+            supplier = null;
+        }
+        return example;
+    }
+
+    @Override
+    public String toString() {
+        return get();
+    }
+}
@@ -1,21 +1,64 @@
 package com.jetbrains.codegen.docs;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.jetbrains.codegen.AssetProvider;
+import com.jetbrains.codegen.GenerationManifest;
+import com.jetbrains.codegen.GenerationMetrics;
+import com.jetbrains.codegen.GenerationMetricsAware;
+import com.jetbrains.codegen.ModelGraph;
+import com.jetbrains.codegen.ModelGraphAware;
+import com.jetbrains.codegen.ModelPreparer;
+import com.jetbrains.codegen.ModelUsageProvider;
+import com.jetbrains.codegen.Naming;
 import io.swagger.codegen.*;
+import io.swagger.models.HttpMethod;
 import io.swagger.models.Model;
 import io.swagger.models.Operation;
+import io.swagger.models.Path;
+import io.swagger.models.Response;
 import io.swagger.models.Swagger;
+import io.swagger.models.parameters.Parameter;
 import io.swagger.models.properties.ArrayProperty;
 import io.swagger.models.properties.Property;
+import io.swagger.util.Json;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.Console;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig {
+public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig, ModelGraphAware, ModelPreparer, ModelUsageProvider, AssetProvider, GenerationMetricsAware {
+    public static final String EXAMPLE_MAX_DEPTH = "exampleMaxDepth";
+    public static final String EXAMPLE_MAX_NODES = "exampleMaxNodes";
+    public static final String EXAMPLE_MAX_LENGTH = "exampleMaxLength";
+    public static final String EXAMPLE_ASSETS = "exampleAssets";
+
+    private static final String EXAMPLES_FOLDER = "examples";
+
+    private static final List<String> MODEL_EXAMPLE_MIME_TYPES = Collections.unmodifiableList(Arrays.asList(
+            TeamCityExampleGenerator.MIME_TYPE_JSON,
+            TeamCityExampleGenerator.MIME_TYPE_XML
+    ));
+
     private TeamCityExampleGenerator exampleGenerator;
+    private ExampleBudget exampleBudget = ExampleBudget.DEFAULT;
+    private boolean exampleAssets;
+    /**
+     * Examples shared by the pages of the current run, by their path relative to the output folder.
+     */
+    private final Map<String, String> assets = new ConcurrentHashMap<>();
+    /**
+     * Examples of the models prepared for the current run, by model name.
+     */
+    private final Map<String, List<Map<String, String>>> modelExamples = new ConcurrentHashMap<>();
+    private Swagger swagger;
+    private TeamCityReferenceIndex referenceIndex;
+    private ModelGraph modelGraph;
+    private GenerationMetrics metrics;
+    private final Naming naming = new Naming();
     protected String invokerPackage = "io.swagger.client";
     protected String groupId = "io.swagger";
     protected String artifactId = "swagger-client";
@@ -57,6 +100,14 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
         cliOptions.add(new CliOption(CodegenConstants.GROUP_ID, CodegenConstants.GROUP_ID_DESC));
         cliOptions.add(new CliOption(CodegenConstants.ARTIFACT_ID, CodegenConstants.ARTIFACT_ID_DESC));
         cliOptions.add(new CliOption(CodegenConstants.ARTIFACT_VERSION, CodegenConstants.ARTIFACT_VERSION_DESC));
+        cliOptions.add(new CliOption(EXAMPLE_MAX_DEPTH, "Number of nested model levels expanded in examples")
+                .defaultValue(String.valueOf(ExampleBudget.DEFAULT_MAX_DEPTH)));
+        cliOptions.add(new CliOption(EXAMPLE_MAX_NODES, "Number of values in an example after which nested models are linked")
+                .defaultValue(String.valueOf(ExampleBudget.DEFAULT_MAX_NODES)));
+        cliOptions.add(new CliOption(EXAMPLE_MAX_LENGTH, "Number of characters of an example after which nested models are linked")
+                .defaultValue(String.valueOf(ExampleBudget.DEFAULT_MAX_LENGTH)));
+        cliOptions.add(CliOption.newBoolean(EXAMPLE_ASSETS, "Write every distinct example once into the "
+                + EXAMPLES_FOLDER + " folder, named by the hash of its content, and reference it from the pages"));
 
         additionalProperties.put(CodegenConstants.INVOKER_PACKAGE, invokerPackage);
         additionalProperties.put(CodegenConstants.GROUP_ID, groupId);
@@ -75,6 +126,140 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
         supportingFiles.add(
                 new SupportingFile("autodoc.tree.mustache", "", "autodoc.tree")
         );
+        supportingFiles.add(
+                new SupportingFile("references.json.mustache", "", "references.json")
+        );
+        supportingFiles.add(
+                new SupportingFile("search-index.json.mustache", "", "search-index.json")
+        );
+
+        exampleBudget = new ExampleBudget(
+                getIntOption(EXAMPLE_MAX_DEPTH, ExampleBudget.DEFAULT_MAX_DEPTH),
+                getIntOption(EXAMPLE_MAX_NODES, ExampleBudget.DEFAULT_MAX_NODES),
+                getIntOption(EXAMPLE_MAX_LENGTH, ExampleBudget.DEFAULT_MAX_LENGTH));
+        exampleAssets = Boolean.parseBoolean(String.valueOf(additionalProperties.get(EXAMPLE_ASSETS)));
+
+        // names depend on the options processed above
+        naming.clear();
+    }
+
+    private int getIntOption(String name, int defaultValue) {
+        Object value = additionalProperties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " must be a number: " + value, e);
+        }
+    }
+
+    @Override
+    public void preprocessSwagger(Swagger swagger) {
+        super.preprocessSwagger(swagger);
+        // inline models are flattened in place afterwards, the reference index reads the flattened operations
+        this.swagger = swagger;
+    }
+
+    @Override
+    public synchronized void setModelGraph(ModelGraph modelGraph) {
+        this.modelGraph = modelGraph;
+        // examples and references are resolved against the graph of the run
+        this.exampleGenerator = null;
+        this.referenceIndex = buildReferenceIndex(modelGraph);
+        modelExamples.clear();
+        assets.clear();
+    }
+
+    /**
+     * Precomputes the JSON and XML examples of a model if they are shared: shared examples are needed for every model,
+     * while other examples are only generated once a template renders them. The examples of a model only depend on the
+     * model graph, so models may be prepared in any order, and concurrently.
+     */
+    @Override
+    public void prepareModel(String name, Model model) {
+        if (isSharingExamples(model)) {
+            modelExamples.put(name, createModelExamples(name, modelGraph.getDefinitions()));
+        }
+    }
+
+    @Override
+    public void setGenerationMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private synchronized ModelGraph getModelGraph(Map<String, Model> definitions) {
+        if (modelGraph == null) {
+            modelGraph = ModelGraph.build(definitions);
+        }
+        return modelGraph;
+    }
+
+    private synchronized TeamCityReferenceIndex getReferenceIndex(Map<String, Model> definitions) {
+        if (referenceIndex == null) {
+            referenceIndex = buildReferenceIndex(getModelGraph(definitions));
+        }
+        return referenceIndex;
+    }
+
+    /**
+     * Indexes the models used by the parameters and responses of every operation, under the API page and the
+     * operation name the operation is rendered with.
+     */
+    private TeamCityReferenceIndex buildReferenceIndex(ModelGraph modelGraph) {
+        TeamCityReferenceIndex index = new TeamCityReferenceIndex(modelGraph);
+        if (swagger == null || swagger.getPaths() == null) {
+            return index;
+        }
+        for (Map.Entry<String, Path> pathEntry : swagger.getPaths().entrySet()) {
+            String resourcePath = pathEntry.getKey();
+            Path path = pathEntry.getValue();
+            for (Map.Entry<HttpMethod, Operation> operationEntry : path.getOperationMap().entrySet()) {
+                Operation operation = operationEntry.getValue();
+                String httpMethod = operationEntry.getKey().name().toLowerCase(Locale.ROOT);
+                String nickname = toNickname(resourcePath, httpMethod, operation);
+
+                List<Parameter> parameters = new ArrayList<>();
+                if (path.getParameters() != null) {
+                    parameters.addAll(path.getParameters());
+                }
+                if (operation.getParameters() != null) {
+                    parameters.addAll(operation.getParameters());
+                }
+                Response response = operation.getResponses() == null ? null : findMethodResponse(operation.getResponses());
+
+                List<String> tags = operation.getTags();
+                for (String tag : tags == null || tags.isEmpty() ? Collections.singletonList("default") : tags) {
+                    String page = toApiFilename(sanitizeTag(tag)) + ".md";
+                    index.addOperation(
+                            new TeamCityReferenceIndex.OperationReference(httpMethod.toUpperCase(Locale.ROOT), resourcePath, nickname, page),
+                            parameters,
+                            response
+                    );
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Same as the nickname set by {@link #fromOperation}.
+     */
+    private String toNickname(String path, String httpMethod, Operation operation) {
+        String operationId = getOrGenerateOperationId(operation, path, httpMethod);
+        if (removeOperationIdPrefix) {
+            int offset = operationId.indexOf('_');
+            if (offset > -1) {
+                operationId = operationId.substring(offset + 1);
+            }
+        }
+        return toOperationId(removeNonNameElementToCamelCase(operationId));
+    }
+
+    @Override
+    public String describeModelUsages(String name) {
+        return Json.pretty(getReferenceIndex(null).describe(name));
     }
 
     @Override
@@ -124,69 +309,12 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
 
     @Override
     public String sanitizeName(String name) {
-        // NOTE: performance wise, we should have written with 2 replaceAll to replace desired
-        // character with _ or empty character. Below aims to spell out different cases we've
-        // encountered so far and hopefully make it easier for others to add more special
-        // cases in the future.
-
-        // better error handling when map/array type is invalid
-        if (name == null) {
-            return "ERROR_UNKNOWN";
-        }
-
-        // if the name is just '$', map it to 'value' for the time being.
-        if ("$".equals(name)) {
-            return "value";
-        }
-
-        // input[] => input
-        name = name.replaceAll("\\[\\]", ""); // FIXME: a parameter should not be assigned. Also declare the methods parameters as 'final'.
-
-        // input[a][b] => input_a_b
-        name = name.replaceAll("\\[", "_");
-        name = name.replaceAll("\\]", "");
-
-        // input(a)(b) => input_a_b
-        name = name.replaceAll("\\(", "_");
-        name = name.replaceAll("\\)", "");
-
-        // input-name => input_name
-        name = name.replaceAll("-", "_");
-
-        // input name and age => input_name_and_age
-        name = name.replaceAll(" ", "_");
-
-        return name;
+        return Naming.sanitizeName(name);
     }
 
-
     @Override
     public String toModelName(String name) {
-        name = sanitizeName(name); // FIXME: a parameter should not be assigned. Also declare the methods parameters as 'final'.
-        // remove dollar sign
-        name = name.replaceAll("\\$", "");
-
-        // model name cannot use reserved keyword, e.g. return
-        if (isReservedWord(name)) {
-            name = "model_" + name; // e.g. return => ModelReturn (after camelize)
-        }
-
-        // model name starts with number
-        if (name.matches("^\\d.*")) {
-            name = "model_" + name; // e.g. 200Response => Model200Response (after camelize)
-        }
-
-        if (!StringUtils.isEmpty(modelNamePrefix)) {
-            name = modelNamePrefix + "_" + name;
-        }
-
-        if (!StringUtils.isEmpty(modelNameSuffix)) {
-            name = name + "_" + modelNameSuffix;
-        }
-
-        // camelize the model name
-        // phone_number => PhoneNumber
-        return camelize(name);
+        return naming.toModelName(name, this::isReservedWord, modelNamePrefix, modelNameSuffix);
     }
 
     @Override
@@ -208,17 +336,17 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
 
     @Override
     public String toModelFilename(String name) {
-        return camelize(super.toModelFilename(name), true);
+        return naming.toModelFilename(name, modelName -> naming.camelize(super.toModelFilename(modelName), true));
     }
 
     @Override
     public String toApiFilename(String name) {
-        return camelize(super.toApiFilename(name), true);
+        return naming.camelize(super.toApiFilename(name), true);
     }
 
     private String patchWithModelLink(String rawField) {
-        String linkPart = camelize(rawField, true);
-        String visiblePart = camelize(rawField);
+        String linkPart = naming.camelize(rawField, true);
+        String visiblePart = naming.camelize(rawField);
         return String.format("[%s](%s.md)", visiblePart, linkPart);
     }
 
@@ -241,9 +369,9 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
             }
 
             //patch dataType with a link to <model>.md from dataFormat
-            else if (param.dataFormat != null && definitions.containsKey(param.dataFormat)) {
-                String newDataType = camelize(param.dataFormat, true);
-                String capitalizedNewDataType = camelize(param.dataFormat);
+            else if (getModelGraph(definitions).contains(param.dataFormat)) {
+                String newDataType = naming.camelize(param.dataFormat, true);
+                String capitalizedNewDataType = naming.camelize(param.dataFormat);
                 param.dataType = String.format("%s[<%s>](%s.md)", param.dataType, capitalizedNewDataType, newDataType);
             }
         }
@@ -251,21 +379,16 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
         return op;
     }
 
-    private TeamCityExampleGenerator getExampleGeneratorInstance() {
-        return this.exampleGenerator;
-    }
-
-    private void setExampleGeneratorInstance(TeamCityExampleGenerator generator) {
-        this.exampleGenerator = generator;
+    private synchronized TeamCityExampleGenerator getExampleGeneratorInstance(Map<String, Model> definitions) {
+        if (exampleGenerator == null) {
+            exampleGenerator = new TeamCityExampleGenerator(getModelGraph(definitions), exampleBudget);
+        }
+        return exampleGenerator;
     }
 
     @Override
     protected List<Map<String, String>> getExamples(Map<String, Model> definitions, Map<String, Object> examples, List<String> mediaTypes, Object object) {
-        TeamCityExampleGenerator generator = getExampleGeneratorInstance();
-        if (generator == null) {
-            generator = new TeamCityExampleGenerator(definitions);
-            setExampleGeneratorInstance(generator);
-        }
+        TeamCityExampleGenerator generator = getExampleGeneratorInstance(definitions);
 
         if (object instanceof Property) {
             Property responseProperty = (Property) object;
@@ -278,10 +401,13 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
     @Override
     public CodegenModel fromModel(String name, Model model, Map<String, Model> allDefinitions) {
         CodegenModel m = super.fromModel(name, model, allDefinitions);
+        // the vendor extensions are those of the spec model, keep the ones added below out of the definitions:
+        // otherwise the model JSON of every later codegen model of it would generate the examples
+        m.vendorExtensions = new LinkedHashMap<>(m.vendorExtensions);
 
         String baseEntity = (String) m.vendorExtensions.get("x-base-entity");
         if (baseEntity != null) {
-            String lookupKey = camelize(baseEntity);
+            String lookupKey = naming.camelize(baseEntity);
             String replacement = patchWithModelLink(baseEntity);
             String description = m.description;
 
@@ -309,40 +435,108 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
             }
 
             //patch data format with a link to <model>.md
-            if (prop.dataFormat != null && allDefinitions.containsKey(prop.dataFormat)) {
+            if (getModelGraph(allDefinitions).contains(prop.dataFormat)) {
                 prop.dataFormat = patchWithModelLink(prop.dataFormat);
             }
         }
 
-        List<String> mimeTypes = new ArrayList<>(
-                Arrays.asList(
-                        TeamCityExampleGenerator.MIME_TYPE_JSON,
-                        TeamCityExampleGenerator.MIME_TYPE_XML
-                )
-        );
+        TeamCityReferenceIndex references = getReferenceIndex(allDefinitions);
+        List<String> usedBy = new ArrayList<>();
+        for (String modelName : references.getUsedByModels(name)) {
+            usedBy.add(patchWithModelLink(modelName));
+        }
+        for (TeamCityReferenceIndex.OperationReference operation : references.getUsedByOperations(name)) {
+            usedBy.add(toOperationLink(operation));
+        }
+        List<String> returnedBy = new ArrayList<>();
+        for (TeamCityReferenceIndex.OperationReference operation : references.getReturnedBy(name)) {
+            returnedBy.add(toOperationLink(operation));
+        }
+        if (!usedBy.isEmpty()) {
+            m.vendorExtensions.put("x-used-by", Collections.singletonMap("links", usedBy));
+        }
+        if (!returnedBy.isEmpty()) {
+            m.vendorExtensions.put("x-returned-by", Collections.singletonMap("links", returnedBy));
+        }
 
-        List<Map<String, String>> examples = getExamples(allDefinitions, null, mimeTypes, name);
-        examples.forEach((map) -> {
-            if (map.containsKey(TeamCityExampleGenerator.CONTENT_TYPE)) {
-                String contentType = map.get(TeamCityExampleGenerator.CONTENT_TYPE);
-                String example = map.get(TeamCityExampleGenerator.EXAMPLE);
-                switch (contentType) {
-                    case TeamCityExampleGenerator.MIME_TYPE_JSON:
-                        m.vendorExtensions.put("x-json-example", example);
-                        break;
-                    case TeamCityExampleGenerator.MIME_TYPE_XML:
-                        m.vendorExtensions.put("x-xml-example", example);
-                        break;
-                }
+        if (isSharingExamples(model)) {
+            // the shared examples must be complete whichever pages are rendered, so they are generated eagerly
+            List<Map<String, String>> examples = modelExamples.get(name);
+            if (examples == null) {
+                examples = createModelExamples(name, allDefinitions);
             }
-        });
+            examples.forEach((map) -> {
+                if (map.containsKey(TeamCityExampleGenerator.CONTENT_TYPE)) {
+                    String contentType = map.get(TeamCityExampleGenerator.CONTENT_TYPE);
+                    String example = map.get(TeamCityExampleGenerator.EXAMPLE);
+                    switch (contentType) {
+                        case TeamCityExampleGenerator.MIME_TYPE_JSON:
+                            m.vendorExtensions.put("x-json-example-asset", addExampleAsset(example, "json"));
+                            break;
+                        case TeamCityExampleGenerator.MIME_TYPE_XML:
+                            m.vendorExtensions.put("x-xml-example-asset", addExampleAsset(example, "xml"));
+                            break;
+                    }
+                }
+            });
+        } else {
+            m.vendorExtensions.put("x-json-example", new LazyExample(() -> createModelExample(name, allDefinitions, TeamCityExampleGenerator.MIME_TYPE_JSON)));
+            m.vendorExtensions.put("x-xml-example", new LazyExample(() -> createModelExample(name, allDefinitions, TeamCityExampleGenerator.MIME_TYPE_XML)));
+        }
 
         return m;
     }
 
+    /**
+     * Pages of locators don't show the schema, so their examples are not shared.
+     */
+    private boolean isSharingExamples(Model model) {
+        return exampleAssets && (model.getVendorExtensions() == null || model.getVendorExtensions().get("x-is-locator") == null);
+    }
+
+    /**
+     * Stores an example in the shared examples, where identical examples of different pages end up in the same file.
+     *
+     * @return path of the example relative to the output folder
+     */
+    private String addExampleAsset(String example, String extension) {
+        String path = EXAMPLES_FOLDER + "/" + GenerationManifest.hash(example) + "." + extension;
+        assets.put(path, example);
+        return path;
+    }
+
+    @Override
+    public Map<String, String> getAssets() {
+        return Collections.unmodifiableMap(assets);
+    }
+
+    private static String toOperationLink(TeamCityReferenceIndex.OperationReference operation) {
+        return String.format("[%s](%s): `%s %s`", operation.operation, operation.page, operation.method, operation.path);
+    }
+
+    @SuppressWarnings("try")
+    private List<Map<String, String>> createModelExamples(String name, Map<String, Model> definitions) {
+        try (GenerationMetrics.Span ignored = metrics == null ? null : metrics.model(name, GenerationMetrics.EXAMPLE)) {
+            return getExamples(definitions, null, MODEL_EXAMPLE_MIME_TYPES, name);
+        }
+    }
+
+    @SuppressWarnings("try")
+    private String createModelExample(String name, Map<String, Model> definitions, String mediaType) {
+        try (GenerationMetrics.Span ignored = metrics == null ? null : metrics.model(name, GenerationMetrics.EXAMPLE)) {
+            for (Map<String, String> example : getExamples(definitions, null, Collections.singletonList(mediaType), name)) {
+                if (mediaType.equals(example.get(TeamCityExampleGenerator.CONTENT_TYPE))) {
+                    return example.get(TeamCityExampleGenerator.EXAMPLE);
+                }
+            }
+            return null;
+        }
+    }
+
     @Override
     public Map<String, Object> postProcessSupportingFileData(Map<String, Object> objs) {
         List<Object> models = (List<Object>) objs.get("models");
+        objs.put("searchIndexJson", toCompactJson(buildSearchIndex(models, (Map<String, Object>) objs.get("apiInfo")).describe()));
 
         HashMap<String, Object> resultModels = new HashMap<>();
         ArrayList<Object> groupedModels = new ArrayList<>();
@@ -356,10 +550,12 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
             HashMap<String, Object> modelMap = new HashMap<>();
             modelMap.put("model", cModel);
 
-            if (!cModel.vendorExtensions.containsKey("x-subpackage")) {
+            String rawSubpackageString = modelGraph == null
+                    ? (String) cModel.vendorExtensions.get("x-subpackage")
+                    : modelGraph.getSubpackage(cModel.name);
+            if (rawSubpackageString == null) {
                 ungroupedModels.add(modelMap);
             } else {
-                String rawSubpackageString = (String) cModel.vendorExtensions.get("x-subpackage");
                 String subpackage = StringUtils.capitalize(
                     Arrays.stream(
                         rawSubpackageString
@@ -394,10 +590,57 @@ public class TeamCityDocsCodegen extends DefaultCodegen implements CodegenConfig
         resultModels.put("ungroupedModels", ungroupedModels);
         resultModels.put("locators", locators);
         objs.put("models", resultModels);
+        objs.put("referencesJson", Json.pretty(getReferenceIndex(swagger == null ? null : swagger.getDefinitions()).describe()));
 
         return objs;
     }
 
+    private TeamCitySearchIndex buildSearchIndex(List<Object> models, Map<String, Object> apiInfo) {
+        TeamCitySearchIndex index = new TeamCitySearchIndex();
+        for (Object model : models) {
+            CodegenModel cModel = (CodegenModel) ((Map<String, Object>) model).get("model");
+            List<String> words = new ArrayList<>();
+            words.add(cModel.classname);
+            for (CodegenProperty var : cModel.vars) {
+                words.add(var.baseName);
+            }
+            boolean isLocator = cModel.vendorExtensions.get("x-is-locator") != null;
+            index.addDocument(
+                    cModel.classname,
+                    toModelFilename(cModel.name) + ".md",
+                    isLocator ? TeamCitySearchIndex.LOCATOR : TeamCitySearchIndex.MODEL,
+                    "",
+                    words
+            );
+        }
+
+        List<Map<String, Object>> apis = apiInfo == null ? null : (List<Map<String, Object>>) apiInfo.get("apis");
+        if (apis != null) {
+            for (Map<String, Object> api : apis) {
+                String page = api.get("classFilename") + ".md";
+                Map<String, Object> operations = (Map<String, Object>) api.get("operations");
+                for (CodegenOperation operation : (List<CodegenOperation>) operations.get("operation")) {
+                    index.addDocument(
+                            operation.nickname,
+                            page,
+                            TeamCitySearchIndex.OPERATION,
+                            operation.httpMethod + " " + operation.path,
+                            Arrays.asList(operation.nickname, operation.httpMethod, operation.path)
+                    );
+                }
+            }
+        }
+        return index;
+    }
+
+    private static String toCompactJson(Object value) {
+        try {
+            return Json.mapper().writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize " + value, e);
+        }
+    }
+
     @Override
     public Map<String, Object> postProcessOperations(Map<String, Object> objs) {
         Map<String, Object> objsMap = super.postProcessOperations(objs);
@@ -1,5 +1,8 @@
 package com.jetbrains.codegen.docs;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.jetbrains.codegen.ModelGraph;
 import io.swagger.models.Model;
 import io.swagger.models.ModelImpl;
 import io.swagger.models.properties.*;
@@ -7,15 +10,30 @@ import io.swagger.util.Json;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static io.swagger.codegen.DefaultCodegen.camelize;
 import static io.swagger.models.properties.StringProperty.Format.URI;
 import static io.swagger.models.properties.StringProperty.Format.URL;
 
+/**
+ * Creates JSON and XML examples of models and responses. JSON examples are written straight to a pretty printing
+ * {@link JsonGenerator} while the properties are walked, without building the example as objects first.
+ * <p>
+ * Nested models are expanded wherever they occur, so a model must look the same every time: the random values of a
+ * model are drawn from its own {@link Random}, seeded with the model name. Hence examples don't depend on the order
+ * they are generated in, and a generator can be used from several threads.
+ * <p>
+ * The size of every example is limited by an {@link ExampleBudget}: once it is used up, nested models are written as
+ * links to their docs.
+ * <p>
+ * The JSON of a model nested at a given level is rendered once and then spliced into every example which includes the
+ * model at that level, see {@link ModelFragment}.
+ */
 public class TeamCityExampleGenerator {
     private static final Logger logger = LoggerFactory.getLogger(TeamCityExampleGenerator.class);
 
@@ -28,19 +46,53 @@ public class TeamCityExampleGenerator {
     private static final String OUTPUT = "output";
     private static final String NONE = "none";
 
-    private static final Integer MAX_MODEL_DEPTH = 9;
+    // use a fixed seed to make the "random" numbers reproducible.
+    private static final long SEED = "ExampleGenerator".hashCode();
 
-    protected Map<String, Model> definitions;
-    private final Random random;
+    /**
+     * Indentation of one nesting level by the {@link DefaultPrettyPrinter}.
+     */
+    private static final String INDENT = "  ";
+    /**
+     * Longest separator the {@link DefaultPrettyPrinter} writes before a value, {@code " : "} after a field name.
+     */
+    private static final int MAX_VALUE_SEPARATOR_LENGTH = 3;
+
+    protected ModelGraph modelGraph;
+    private final ExampleBudget budget;
+    /**
+     * XML generators reuse their buffer, so there is one per thread.
+     */
+    private final ThreadLocal<TeamCityXMLExampleGenerator> xmlExampleGenerator;
+    /**
+     * The order of the properties in the JSON examples of models, by model name.
+     */
+    private final Map<String, List<String>> propertyOrders = new ConcurrentHashMap<>();
+    /**
+     * JSON of models by the level they are nested at, and then by model name. Models nested at the maximum depth are
+     * always links, so there are no fragments for them.
+     */
+    private final List<Map<String, ModelFragment>> modelFragments = new ArrayList<>();
 
     public TeamCityExampleGenerator(Map<String, Model> definitions) {
-        this.definitions = definitions == null ? new HashMap<>() : definitions;
+        this(ModelGraph.build(definitions));
+    }
+
+    public TeamCityExampleGenerator(ModelGraph modelGraph) {
+        this(modelGraph, ExampleBudget.DEFAULT);
+    }
+
+    public TeamCityExampleGenerator(ModelGraph modelGraph, ExampleBudget budget) {
+        this.modelGraph = modelGraph;
+        this.budget = budget;
+        this.xmlExampleGenerator = ThreadLocal.withInitial(() -> new TeamCityXMLExampleGenerator(modelGraph, budget));
 
-        // use a fixed seed to make the "random" numbers reproducible.
-        this.random = new Random("ExampleGenerator".hashCode());
+        for (int level = 0; level < budget.getMaxDepth(); level++) {
+            modelFragments.add(new ConcurrentHashMap<>());
+        }
     }
 
-    private double randomNumber(Double min, Double max) {
+    private static double randomNumber(Random random, Double min, Double max) {
         if (min != null && max != null) {
             double range = max - min;
             return random.nextDouble() * range + min;
@@ -55,7 +107,6 @@ public class TeamCityExampleGenerator {
 
     public List<Map<String, String>> generate(Map<String, Object> examples, List<String> mediaTypes, Property property) {
         List<Map<String, String>> output = new ArrayList<>();
-        Set<String> processedModels = new HashSet<>();
         if (examples == null) {
             if (mediaTypes == null) {
                 // assume application/json for this
@@ -65,23 +116,15 @@ public class TeamCityExampleGenerator {
                 Map<String, String> kv = new HashMap<>();
                 kv.put(CONTENT_TYPE, mediaType);
                 if (property != null && mediaType.startsWith(MIME_TYPE_JSON)) {
-                    String example = Json.pretty(resolvePropertyToExample("", mediaType, property, processedModels));
+                    String example = propertyToJson(mediaType, property);
 
                     if (example != null) {
                         kv.put(EXAMPLE, example);
                         output.add(kv);
                     }
                 } else if (property != null && mediaType.startsWith(MIME_TYPE_XML)) {
-                    String example = null;
-                    try {
-                        example = new TeamCityXMLExampleGenerator(this.definitions).propertyToXml(property);
-                    } catch (ParserConfigurationException | TransformerException e) {
-                        logger.warn(e.getMessage());
-                    }
-                    if (example != null) {
-                        kv.put(EXAMPLE, example);
-                        output.add(kv);
-                    }
+                    kv.put(EXAMPLE, xmlExampleGenerator.get().propertyToXml(property));
+                    output.add(kv);
                 }
             }
         } else {
@@ -102,7 +145,6 @@ public class TeamCityExampleGenerator {
 
     public List<Map<String, String>> generate(Map<String, Object> examples, List<String> mediaTypes, String modelName) {
         List<Map<String, String>> output = new ArrayList<>();
-        Set<String> processedModels = new HashSet<>();
         if (examples == null) {
             if (mediaTypes == null) {
                 // assume application/json for this
@@ -111,12 +153,12 @@ public class TeamCityExampleGenerator {
             for (String mediaType : mediaTypes) {
                 Map<String, String> kv = new HashMap<>();
                 kv.put(CONTENT_TYPE, mediaType);
-                if (modelName != null && this.definitions.containsKey(modelName)) {
+                if (modelGraph.contains(modelName)) {
                     if (mediaType.startsWith(MIME_TYPE_JSON)) {
                         logger.debug("Trying to process as JSON");
-                        final Model model = this.definitions.get(modelName);
+                        final Model model = modelGraph.getModel(modelName);
                         if (model != null) {
-                            String example = Json.pretty(resolveModelToExample(modelName, mediaType, model, processedModels));
+                            String example = modelToJson(modelName, mediaType, model);
                             if (example != null) {
                                 kv.put(EXAMPLE, example);
                                 output.add(kv);
@@ -124,18 +166,10 @@ public class TeamCityExampleGenerator {
                         }
                     } else if (mediaType.startsWith(MIME_TYPE_XML)) {
                         logger.debug("Trying to process as XML");
-                        final ModelImpl model = (ModelImpl) this.definitions.get(modelName);
+                        final ModelImpl model = (ModelImpl) modelGraph.getModel(modelName);
                         if (model != null) {
-                            String example = null;
-                            try {
-                                example = new TeamCityXMLExampleGenerator(this.definitions).modelToXml(modelName, model);
-                            } catch (ParserConfigurationException | TransformerException e) {
-                                logger.warn(e.getMessage());
-                            }
-                            if (example != null) {
-                                kv.put(EXAMPLE, example);
-                                output.add(kv);
-                            }
+                            kv.put(EXAMPLE, xmlExampleGenerator.get().modelToXml(modelName, model));
+                            output.add(kv);
                         }
                     }
                 }
@@ -156,151 +190,370 @@ public class TeamCityExampleGenerator {
         return output;
     }
 
-    private Object resolvePropertyToExample(String propertyName, String mediaType, Property property, Set<String> processedModels) {
-        return resolvePropertyToExample(propertyName, mediaType, property, processedModels, 0);
+    /**
+     * The model a property references is the model of the example: it is expanded regardless of the budget.
+     */
+    public String propertyToJson(String mediaType, Property property) {
+        return toJson(example -> writePropertyExample(example, "", mediaType, property, -1, new Random(SEED)));
+    }
+
+    public String modelToJson(String name, String mediaType, Model model) {
+        return toJson(example -> writeModelExample(example, name, mediaType, model, 0));
+    }
+
+    /**
+     * Same as {@link Json#pretty(Object)} of the example: {@code null} if it can't be written.
+     */
+    private static String toJson(ExampleWriter example) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = createGenerator(writer)) {
+            example.write(new JsonExample(writer, generator, false));
+        } catch (IOException e) {
+            logger.warn(e.getMessage());
+            return null;
+        }
+        return writer.toString();
+    }
+
+    private static JsonGenerator createGenerator(StringWriter writer) throws IOException {
+        JsonGenerator generator = Json.mapper().getFactory().createGenerator(writer);
+        generator.setPrettyPrinter(new ExamplePrettyPrinter());
+        return generator;
     }
 
-    public Object resolvePropertyToExample(String propertyName, String mediaType, Property property, Set<String> processedModels, Integer depth) {
+    /**
+     * @param level nesting level of the model the property belongs to, -1 for a property outside of any model
+     */
+    private void writePropertyExample(JsonExample example, String propertyName, String mediaType, Property property, int level, Random random) throws IOException {
         logger.debug("Resolving example for property " + property);
+        example.nodes++;
+        JsonGenerator generator = example.generator;
         if (property.getExample() != null) {
             logger.debug("Example set in swagger spec, returning example: " + property.getExample().toString());
-            return property.getExample();
+            generator.writeObject(property.getExample());
         } else if (property instanceof StringProperty) {
             logger.debug("String property");
-            String defaultValue = ((StringProperty) property).getDefault();
-            if (defaultValue != null && !defaultValue.isEmpty()) {
-                logger.debug("Default value found: " + defaultValue);
-                return defaultValue;
-            }
-            List<String> enumValues = ((StringProperty) property).getEnum();
-            if (enumValues != null && !enumValues.isEmpty()) {
-                logger.debug("Enum value found: " + enumValues.get(0));
-                return enumValues.get(0);
-            }
-            String format = property.getFormat();
-            if ((URI.getName().equals(format) || URL.getName().equals(format))) {
-                logger.debug("URI or URL format, without default or enum, generating random one.");
-                return "http://example.com/aeiou";
-            }
-            logger.debug("No values found, using property name " + propertyName + " as example");
-            return propertyName;
+            generator.writeString(resolveStringExample(propertyName, (StringProperty) property));
         } else if (property instanceof BooleanProperty) {
             Boolean defaultValue = ((BooleanProperty) property).getDefault();
-            if (defaultValue != null) {
-                return defaultValue;
-            }
-            return Boolean.TRUE;
-        } else if (property instanceof ArrayProperty) {
+            generator.writeBoolean(defaultValue != null ? defaultValue : true);
+        } else if (property instanceof ArrayProperty && ((ArrayProperty) property).getItems() != null) {
             Property innerType = ((ArrayProperty) property).getItems();
-            if (innerType != null) {
-                int arrayLength = null == ((ArrayProperty) property).getMaxItems() ? 1 : ((ArrayProperty) property).getMaxItems();
-                // max 10 examples to avoid OOM
-                if (arrayLength > 10) {
-                    logger.warn("value of maxItems of property {} is {}; limiting to 10 examples", property, arrayLength);
-                    arrayLength = 10;
-                }
-                Object[] objectProperties = new Object[arrayLength];
-                Object objProperty = resolvePropertyToExample(propertyName, mediaType, innerType, processedModels, depth + 1);
-                for(int i=0; i < arrayLength; i++) {
-                    objectProperties[i] = objProperty;
-                }
-                return objectProperties;
+            int arrayLength = null == ((ArrayProperty) property).getMaxItems() ? 1 : ((ArrayProperty) property).getMaxItems();
+            // max 10 examples to avoid OOM
+            if (arrayLength > 10) {
+                logger.warn("value of maxItems of property {} is {}; limiting to 10 examples", property, arrayLength);
+                arrayLength = 10;
+            }
+            // all items are the same example
+            long itemSeed = random.nextLong();
+            generator.writeStartArray();
+            for (int i = 0; i < arrayLength; i++) {
+                writePropertyExample(example, propertyName, mediaType, innerType, level, new Random(itemSeed));
             }
+            generator.writeEndArray();
         } else if (property instanceof DateProperty) {
-            return "2000-01-23";
+            generator.writeString("2000-01-23");
         } else if (property instanceof DateTimeProperty) {
-            return "2000-01-23T04:56:07.000+00:00";
+            generator.writeString("2000-01-23T04:56:07.000+00:00");
         } else if (property instanceof DoubleProperty) {
             Double min = ((DecimalProperty) property).getMinimum() == null ? null : ((DecimalProperty) property).getMinimum().doubleValue();
             Double max = ((DecimalProperty) property).getMaximum() == null ? null : ((DecimalProperty) property).getMaximum().doubleValue();
-            return randomNumber(min, max);
+            generator.writeNumber(randomNumber(random, min, max));
         } else if (property instanceof FloatProperty) {
             Double min = ((DecimalProperty) property).getMinimum() == null ? null : ((DecimalProperty) property).getMinimum().doubleValue();
             Double max = ((DecimalProperty) property).getMaximum() == null ? null : ((DecimalProperty) property).getMaximum().doubleValue();
-            return (float) randomNumber(min, max);
+            generator.writeNumber((float) randomNumber(random, min, max));
         }  else if (property instanceof DecimalProperty) {
             Double min = ((DecimalProperty) property).getMinimum() == null ? null : ((DecimalProperty) property).getMinimum().doubleValue();
             Double max = ((DecimalProperty) property).getMaximum() == null ? null : ((DecimalProperty) property).getMaximum().doubleValue();
-            return new BigDecimal(randomNumber(min, max));
-        } else if (property instanceof FileProperty) {
-            return "";  // TODO
+            generator.writeNumber(new BigDecimal(randomNumber(random, min, max)));
         } else if (property instanceof LongProperty) {
             Double min = ((BaseIntegerProperty) property).getMinimum() == null ? null : ((BaseIntegerProperty) property).getMinimum().doubleValue();
             Double max = ((BaseIntegerProperty) property).getMaximum() == null ? null : ((BaseIntegerProperty) property).getMaximum().doubleValue();
-            return (long) randomNumber(min, max);
+            generator.writeNumber((long) randomNumber(random, min, max));
         } else if (property instanceof BaseIntegerProperty) { // Includes IntegerProperty
             Double min = ((BaseIntegerProperty) property).getMinimum() == null ? null : ((BaseIntegerProperty) property).getMinimum().doubleValue();
             Double max = ((BaseIntegerProperty) property).getMaximum() == null ? null : ((BaseIntegerProperty) property).getMaximum().doubleValue();
-            return (int) randomNumber(min, max);
+            generator.writeNumber((int) randomNumber(random, min, max));
         } else if (property instanceof MapProperty) {
-            Map<String, Object> mp = new HashMap<>();
-            if (property.getName() != null) {
-                mp.put(property.getName(),
-                        resolvePropertyToExample(propertyName, mediaType, ((MapProperty) property).getAdditionalProperties(), processedModels, depth + 1));
-            } else {
-                mp.put("key",
-                        resolvePropertyToExample(propertyName, mediaType, ((MapProperty) property).getAdditionalProperties(), processedModels, depth + 1));
-            }
-            return mp;
+            generator.writeStartObject();
+            generator.writeFieldName(property.getName() != null ? property.getName() : "key");
+            writePropertyExample(example, propertyName, mediaType, ((MapProperty) property).getAdditionalProperties(), level, random);
+            generator.writeEndObject();
         } else if (property instanceof ObjectProperty) {
-            return "{}";
+            generator.writeString("{}");
         } else if (property instanceof RefProperty) {
             String simpleName = ((RefProperty) property).getSimpleRef();
             logger.debug("Ref property, simple name: " + simpleName);
-            Model model = definitions.get(simpleName);
+            Model model = modelGraph.getModel(simpleName);
             if (model != null) {
-                return resolveModelToExample(simpleName, mediaType, model, processedModels, depth + 2);
+                writeModelExample(example, simpleName, mediaType, model, level + 1);
+            } else {
+                logger.warn("Ref property with empty model.");
+                generator.writeString("");
             }
-            logger.warn("Ref property with empty model.");
         } else if (property instanceof UUIDProperty) {
-            return "046b6c7f-0b8a-43b9-b35d-6489e6daee91";
+            generator.writeString("046b6c7f-0b8a-43b9-b35d-6489e6daee91");
+        } else {
+            // also file properties and arrays without items
+            generator.writeString("");
+        }
+    }
+
+    private static String resolveStringExample(String propertyName, StringProperty property) {
+        String defaultValue = property.getDefault();
+        if (defaultValue != null && !defaultValue.isEmpty()) {
+            logger.debug("Default value found: " + defaultValue);
+            return defaultValue;
+        }
+        List<String> enumValues = property.getEnum();
+        if (enumValues != null && !enumValues.isEmpty()) {
+            logger.debug("Enum value found: " + enumValues.get(0));
+            return enumValues.get(0);
+        }
+        String format = property.getFormat();
+        if ((URI.getName().equals(format) || URL.getName().equals(format))) {
+            logger.debug("URI or URL format, without default or enum, generating random one.");
+            return "http://example.com/aeiou";
+        }
+        logger.debug("No values found, using property name " + propertyName + " as example");
+        return propertyName;
+    }
+
+    /**
+     * Writes the example of a model nested {@code level} levels deep, or a link to its docs if the budget of the
+     * example is used up.
+     */
+    private void writeModelExample(JsonExample example, String name, String mediaType, Model model, int level) throws IOException {
+        JsonGenerator generator = example.generator;
+        if (isExhausted(example, level)) {
+            generator.writeString(String.format("[[[%s...|%s.md]]]", name, camelize(name, true)));
+            return;
+        }
+        if (!(model instanceof ModelImpl)) {
+            generator.writeString("");
+            return;
+        }
+        ModelImpl impl = (ModelImpl) model;
+        if (impl.getExample() != null) {
+            logger.debug("Using example from spec: " + impl.getExample());
+            generator.writeObject(impl.getExample());
+            return;
         }
 
-        return "";
+        // models nested in a fragment are written out, so that the fragment records the budget checks of all of them
+        if (!example.fragment) {
+            ModelFragment fragment = getModelFragment(name, mediaType, impl, level);
+            if (fragment.fits(example)) {
+                fragment.write(example);
+                return;
+            }
+        }
+        writeModelProperties(example, name, mediaType, impl, level);
+    }
+
+    private void writeModelProperties(JsonExample example, String name, String mediaType, ModelImpl model, int level) throws IOException {
+        logger.debug("Resolving model to example: " + name);
+        JsonGenerator generator = example.generator;
+        Random random = new Random(31 * SEED + name.hashCode());
+        generator.writeStartObject();
+        for (String propertyName : getPropertyOrder(name, model)) {
+            generator.writeFieldName(propertyName);
+            writePropertyExample(example, propertyName, mediaType, model.getProperties().get(propertyName), level, random);
+        }
+        generator.writeEndObject();
+    }
+
+    private boolean isExhausted(JsonExample example, int level) throws IOException {
+        boolean exhausted = budget.isExhausted(level, example.nodes, example.length());
+        if (example.fragment && level > 0 && level < budget.getMaxDepth()) {
+            // the outcome depends on what was written before the model, not only on the model graph
+            example.recordCheck(exhausted);
+        }
+        return exhausted;
+    }
+
+    private ModelFragment getModelFragment(String name, String mediaType, ModelImpl model, int level) throws IOException {
+        Map<String, ModelFragment> fragments = modelFragments.get(level);
+        ModelFragment fragment = fragments.get(name);
+        if (fragment == null) {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator generator = createGenerator(writer)) {
+                JsonExample example = new JsonExample(writer, generator, true);
+                writeModelProperties(example, name, mediaType, model, level);
+                generator.flush();
+                fragment = new ModelFragment(writer.toString(), example);
+            }
+            ModelFragment existing = fragments.putIfAbsent(name, fragment);
+            if (existing != null) {
+                fragment = existing;
+            }
+        }
+        return fragment;
+    }
+
+    /**
+     * The examples of models list the properties in the iteration order of a {@code HashMap} of them, which is the
+     * order of the published examples.
+     */
+    private List<String> getPropertyOrder(String name, ModelImpl model) {
+        List<String> order = propertyOrders.get(name);
+        if (order == null) {
+            Map<String, Boolean> properties = new HashMap<>();
+            if (model.getProperties() != null) {
+                for (String propertyName : model.getProperties().keySet()) {
+                    properties.put(propertyName, Boolean.TRUE);
+                }
+            }
+            order = Collections.unmodifiableList(new ArrayList<>(properties.keySet()));
+            propertyOrders.put(name, order);
+        }
+        return order;
+    }
+
+    /**
+     * A JSON example being written, with the number of values written so far.
+     */
+    private static final class JsonExample {
+        final StringWriter writer;
+        final JsonGenerator generator;
+        /**
+         * Whether this is the {@link ModelFragment} of a model, which records the budget checks made while writing it.
+         */
+        final boolean fragment;
+        int nodes;
+
+        int lines;
+        private int linesCounted;
+        int checkNodes = -1;
+        int checkLength;
+        int checkLines;
+        boolean checkExhausted;
+
+        JsonExample(StringWriter writer, JsonGenerator generator, boolean fragment) {
+            this.writer = writer;
+            this.generator = generator;
+            this.fragment = fragment;
+        }
+
+        /**
+         * Number of characters written so far, including those not flushed by the generator yet.
+         */
+        int length() {
+            return writer.getBuffer().length() + generator.getOutputBuffered();
+        }
+
+        /**
+         * Nesting level of the objects being written, which the pretty printer indents new lines by.
+         */
+        int nesting() {
+            return ((ExamplePrettyPrinter) generator.getPrettyPrinter()).getNesting();
+        }
+
+        /**
+         * Records where a budget check depending on the size of the example was made, and whether it was exhausted.
+         */
+        void recordCheck(boolean exhausted) throws IOException {
+            generator.flush();
+            StringBuffer buffer = writer.getBuffer();
+            for (; linesCounted < buffer.length(); linesCounted++) {
+                if (buffer.charAt(linesCounted) == '\n') {
+                    lines++;
+                }
+            }
+            checkNodes = nodes;
+            checkLength = buffer.length();
+            checkLines = lines;
+            checkExhausted |= exhausted;
+        }
     }
 
-    public Object resolveModelToExample(
-            String name,
-            String mediaType,
-            Model model,
-            Set<String> processedModels,
-            Integer depth
-    ) {
-        if (depth >= MAX_MODEL_DEPTH) {
-            return String.format("[[[%s...|%s.md]]]", name, camelize(name, true));
+    /**
+     * The JSON of a model nested at some level, rendered as a document of its own. The random values and the models
+     * expanded below it only depend on the model graph; only the budget checks of nested models depend on how much of
+     * the example was written before the model. The fragment records the last of these checks, so that it is reused
+     * only where all of them come out as they did when it was rendered, and the example is the same as if the model
+     * was written out.
+     */
+    private final class ModelFragment {
+        final String json;
+        final int nodes;
+        final int lines;
+        /**
+         * Nodes, characters and line breaks before the last budget check depending on the size of the example,
+         * or -1 nodes if there is none.
+         */
+        final int checkNodes;
+        final int checkLength;
+        final int checkLines;
+        final boolean reusable;
+
+        ModelFragment(String json, JsonExample example) {
+            this.json = json;
+            this.nodes = example.nodes;
+            int lines = 0;
+            for (int i = 0; i < json.length(); i++) {
+                if (json.charAt(i) == '\n') {
+                    lines++;
+                }
+            }
+            this.lines = lines;
+            this.checkNodes = example.checkNodes;
+            this.checkLength = example.checkLength;
+            this.checkLines = example.checkLines;
+            // a link ends the fragment early, anything in front of it could have caused it as well
+            this.reusable = !example.checkExhausted;
         }
-        if (processedModels.contains(name) && model.getExample() != null) {
-            return model.getExample();
+
+        /**
+         * Whether the fragment can be written at the current position of the example. The length of the example at
+         * the checks is bounded from above, since the separator before the value is not written yet.
+         */
+        boolean fits(JsonExample example) {
+            if (!reusable) {
+                return false;
+            }
+            if (checkNodes < 0) {
+                return true;
+            }
+            int indent = INDENT.length() * example.nesting();
+            return example.nodes + checkNodes < budget.getMaxNodes()
+                    && example.length() + MAX_VALUE_SEPARATOR_LENGTH + checkLength + checkLines * indent < budget.getMaxLength();
         }
-        if (model instanceof ModelImpl) {
-            processedModels.add(name);
-            ModelImpl impl = (ModelImpl) model;
-            Map<String, Object> values = new HashMap<>();
-
-            logger.debug("Resolving model to example: " + name);
-
-            if (impl.getExample() != null) {
-                logger.debug("Using example from spec: " + impl.getExample());
-                return impl.getExample();
-            } else if (impl.getProperties() != null) {
-                logger.debug("Creating example from model values");
-                for (String propertyName : impl.getProperties().keySet()) {
-                    Property property = impl.getProperties().get(propertyName);
-                    values.put(propertyName, resolvePropertyToExample(propertyName, mediaType, property, processedModels, depth + 1));
+
+        void write(JsonExample example) throws IOException {
+            int nesting = example.nesting();
+            String indented = json;
+            if (nesting > 0 && lines > 0) {
+                StringBuilder indent = new StringBuilder("\n");
+                for (int i = 0; i < nesting; i++) {
+                    indent.append(INDENT);
                 }
-                impl.setExample(values);
+                indented = json.replace("\n", indent);
             }
-            return values;
+            example.generator.writeRawValue(indented);
+            example.nodes += nodes;
+        }
+    }
+
+    /**
+     * Exposes the nesting level, which fragments are indented by when they are spliced into an example.
+     */
+    private static final class ExamplePrettyPrinter extends DefaultPrettyPrinter {
+        private static final long serialVersionUID = 1L;
+
+        int getNesting() {
+            return _nesting;
+        }
+
+        @Override
+        public DefaultPrettyPrinter createInstance() {
+            return new ExamplePrettyPrinter();
         }
-        return "";
     }
 
-    public Object resolveModelToExample(
-            String name,
-            String mediaType,
-            Model model,
-            Set<String> processedModels
-    ) {
-        return resolveModelToExample(name, mediaType, model, processedModels, 0);
+    private interface ExampleWriter {
+        void write(JsonExample example) throws IOException;
     }
 }
@@ -0,0 +1,158 @@
+package com.jetbrains.codegen.docs;
+
+import com.jetbrains.codegen.ModelGraph;
+import io.swagger.models.ArrayModel;
+import io.swagger.models.Model;
+import io.swagger.models.ModelImpl;
+import io.swagger.models.RefModel;
+import io.swagger.models.Response;
+import io.swagger.models.parameters.BodyParameter;
+import io.swagger.models.parameters.Parameter;
+import io.swagger.models.parameters.SerializableParameter;
+import io.swagger.models.properties.ArrayProperty;
+import io.swagger.models.properties.MapProperty;
+import io.swagger.models.properties.Property;
+import io.swagger.models.properties.RefProperty;
+
+import java.util.*;
+
+/**
+ * Reverse references of the models for the docs: the models and operations which use a model, and the operations
+ * which return it.
+ * <p>
+ * References between models come from the {@link ModelGraph}, operations are added one by one, so the index is built
+ * in a single pass over the operations.
+ */
+public class TeamCityReferenceIndex {
+    private static final Comparator<OperationReference> OPERATION_ORDER = Comparator
+            .comparing((OperationReference operation) -> operation.path)
+            .thenComparing(operation -> operation.method)
+            .thenComparing(operation -> operation.page);
+
+    private final ModelGraph modelGraph;
+    private final Map<String, Set<OperationReference>> usedByOperations = new HashMap<>();
+    private final Map<String, Set<OperationReference>> returnedBy = new HashMap<>();
+
+    public TeamCityReferenceIndex(ModelGraph modelGraph) {
+        this.modelGraph = modelGraph;
+    }
+
+    /**
+     * Adds the models referenced by the parameters and by the response of an operation. Parameters reference models
+     * by their schema, or by their format, as locators do.
+     */
+    public void addOperation(OperationReference operation, List<Parameter> parameters, Response response) {
+        Set<String> parameterModels = new HashSet<>();
+        for (Parameter parameter : parameters) {
+            if (parameter instanceof BodyParameter) {
+                collectReferences(((BodyParameter) parameter).getSchema(), parameterModels);
+            } else if (parameter instanceof SerializableParameter) {
+                parameterModels.add(((SerializableParameter) parameter).getFormat());
+            }
+        }
+        add(usedByOperations, parameterModels, operation);
+
+        if (response != null) {
+            Set<String> responseModels = new HashSet<>();
+            collectReferences(response.getResponseSchema(), responseModels);
+            add(returnedBy, responseModels, operation);
+        }
+    }
+
+    private void add(Map<String, Set<OperationReference>> index, Set<String> models, OperationReference operation) {
+        for (String model : models) {
+            if (modelGraph.contains(model)) {
+                index.computeIfAbsent(model, key -> new TreeSet<>(OPERATION_ORDER)).add(operation);
+            }
+        }
+    }
+
+    private static void collectReferences(Model model, Set<String> result) {
+        if (model instanceof RefModel) {
+            result.add(((RefModel) model).getSimpleRef());
+        } else if (model instanceof ArrayModel) {
+            collectReferences(((ArrayModel) model).getItems(), result);
+        } else if (model instanceof ModelImpl) {
+            // schema of a map
+            collectReferences(((ModelImpl) model).getAdditionalProperties(), result);
+        }
+    }
+
+    private static void collectReferences(Property property, Set<String> result) {
+        if (property instanceof RefProperty) {
+            result.add(((RefProperty) property).getSimpleRef());
+        } else if (property instanceof ArrayProperty) {
+            collectReferences(((ArrayProperty) property).getItems(), result);
+        } else if (property instanceof MapProperty) {
+            collectReferences(((MapProperty) property).getAdditionalProperties(), result);
+        }
+    }
+
+    /**
+     * @return names of the models which reference the given model in their properties, sorted by name
+     */
+    public Set<String> getUsedByModels(String name) {
+        return modelGraph.getReferencedBy(name);
+    }
+
+    /**
+     * @return operations which take the given model as a parameter, sorted by path and method
+     */
+    public Set<OperationReference> getUsedByOperations(String name) {
+        return usedByOperations.getOrDefault(name, Collections.emptySet());
+    }
+
+    /**
+     * @return operations which return the given model, sorted by path and method
+     */
+    public Set<OperationReference> getReturnedBy(String name) {
+        return returnedBy.getOrDefault(name, Collections.emptySet());
+    }
+
+    /**
+     * @return usages of the given model in the layout of {@code references.json}, or null if the model is not used
+     */
+    public Map<String, Object> describe(String name) {
+        if (getUsedByModels(name).isEmpty() && getUsedByOperations(name).isEmpty() && getReturnedBy(name).isEmpty()) {
+            return null;
+        }
+        Map<String, Object> usedBy = new LinkedHashMap<>();
+        usedBy.put("models", getUsedByModels(name));
+        usedBy.put("operations", getUsedByOperations(name));
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("usedBy", usedBy);
+        description.put("returnedBy", getReturnedBy(name));
+        return description;
+    }
+
+    /**
+     * @return usages of all used models by model name, the content of {@code references.json}
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> result = new TreeMap<>();
+        for (String name : modelGraph.getDefinitions().keySet()) {
+            Map<String, Object> description = describe(name);
+            if (description != null) {
+                result.put(name, description);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An operation as listed on its API page.
+     */
+    public static class OperationReference {
+        public final String method;
+        public final String path;
+        public final String operation;
+        public final String page;
+
+        public OperationReference(String method, String path, String operation, String page) {
+            this.method = method;
+            this.path = path;
+            this.operation = operation;
+            this.page = page;
+        }
+    }
+}
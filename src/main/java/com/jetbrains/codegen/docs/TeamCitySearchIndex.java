@@ -0,0 +1,122 @@
+package com.jetbrains.codegen.docs;
+
+import java.util.*;
+
+/**
+ * Inverted index of the docs pages for client-side search, written to {@code search-index.json}.
+ * <p>
+ * Documents are the model pages and the operations on the API pages, and are identified by their position in
+ * {@code documents}. Terms are the lowercase words of model names, property names and locator dimensions, operation
+ * names, paths and HTTP methods; camel case words are indexed as a whole and by their parts. Terms are sorted and
+ * identified by their position in {@code terms}; the postings of a term list the ids of its documents in ascending
+ * order, each as the difference to the previous one. {@code prefixes} maps every prefix of up to
+ * {@value #PREFIX_LENGTH} characters to the range of ids of the terms starting with it, so a query is answered with a
+ * lookup and a scan of the range.
+ */
+public class TeamCitySearchIndex {
+    static final int VERSION = 1;
+    static final int PREFIX_LENGTH = 3;
+
+    public static final String MODEL = "model";
+    public static final String LOCATOR = "locator";
+    public static final String OPERATION = "operation";
+
+    private final List<List<String>> documents = new ArrayList<>();
+    private final Map<String, SortedSet<Integer>> postings = new TreeMap<>();
+
+    /**
+     * @param summary short text shown next to the title, e.g. the method and the path of an operation
+     * @param words   names to index the document by; they are split into terms
+     */
+    public void addDocument(String title, String page, String kind, String summary, Collection<String> words) {
+        int id = documents.size();
+        documents.add(Arrays.asList(title, page, kind, summary));
+        for (String word : words) {
+            for (String term : toTerms(word)) {
+                postings.computeIfAbsent(term, key -> new TreeSet<>()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Splits a name, a path or a sentence into lowercase terms: every run of letters and digits is a term, and so is
+     * every part of a camel case run, e.g. {@code /app/rest/buildTypes} gives {@code app}, {@code rest},
+     * {@code buildtypes}, {@code build} and {@code types}.
+     */
+    static Set<String> toTerms(String word) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (word == null) {
+            return terms;
+        }
+        int length = word.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && !Character.isLetterOrDigit(word.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && Character.isLetterOrDigit(word.charAt(end))) {
+                end++;
+            }
+            if (end > start) {
+                String run = word.substring(start, end);
+                terms.add(run.toLowerCase(Locale.ROOT));
+                addCamelCaseParts(run, terms);
+            }
+            start = end;
+        }
+        return terms;
+    }
+
+    private static void addCamelCaseParts(String run, Set<String> terms) {
+        int partStart = 0;
+        for (int i = 1; i < run.length(); i++) {
+            if (Character.isUpperCase(run.charAt(i)) && !Character.isUpperCase(run.charAt(i - 1))) {
+                terms.add(run.substring(partStart, i).toLowerCase(Locale.ROOT));
+                partStart = i;
+            }
+        }
+        if (partStart > 0) {
+            terms.add(run.substring(partStart).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * @return the index in the layout of {@code search-index.json}
+     */
+    public Map<String, Object> describe() {
+        List<String> terms = new ArrayList<>(postings.keySet());
+        List<int[]> encodedPostings = new ArrayList<>(terms.size());
+        Map<String, int[]> prefixes = new TreeMap<>();
+        for (int termId = 0; termId < terms.size(); termId++) {
+            String term = terms.get(termId);
+
+            SortedSet<Integer> documentIds = postings.get(term);
+            int[] deltas = new int[documentIds.size()];
+            int previous = 0;
+            int i = 0;
+            for (int documentId : documentIds) {
+                deltas[i++] = documentId - previous;
+                previous = documentId;
+            }
+            encodedPostings.add(deltas);
+
+            // terms are sorted, so the terms with a common prefix are a contiguous range
+            for (int prefixLength = 1; prefixLength <= Math.min(PREFIX_LENGTH, term.length()); prefixLength++) {
+                int[] range = prefixes.computeIfAbsent(term.substring(0, prefixLength), key -> new int[2]);
+                if (range[1] == 0) {
+                    range[0] = termId;
+                }
+                range[1] = termId + 1;
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", VERSION);
+        result.put("documents", documents);
+        result.put("terms", terms);
+        result.put("postings", encodedPostings);
+        result.put("prefixes", prefixes);
+        return result;
+    }
+}
@@ -1,142 +1,237 @@
 package com.jetbrains.codegen.docs;
 
+import com.jetbrains.codegen.ModelGraph;
 import io.swagger.models.Model;
 import io.swagger.models.ModelImpl;
 import io.swagger.models.RefModel;
 import io.swagger.models.properties.*;
-import org.apache.commons.lang3.StringEscapeUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.StringWriter;
+
 import java.util.*;
 
 import static io.swagger.codegen.DefaultCodegen.camelize;
 
+/**
+ * Writes XML examples of models: properties of primitive types become attributes, referenced models become nested
+ * elements. The examples are written directly into a buffer which is reused from example to example, in the layout of
+ * an indenting {@code Transformer}: attributes are sorted by name, and children are indented by two spaces.
+ * <p>
+ * The size of every example is limited by an {@link ExampleBudget}: once it is used up, nested models are written as
+ * links to their docs.
+ * <p>
+ * An instance is meant to be reused for all examples of a run, but it is not thread-safe.
+ */
 public class TeamCityXMLExampleGenerator {
     private static final Logger logger = LoggerFactory.getLogger(TeamCityXMLExampleGenerator.class);
-    private static final Integer MAX_MODEL_DEPTH = 3;
+    private static final String INDENT = "  ";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
 
-    protected Map<String, Model> definitions;
+    protected ModelGraph modelGraph;
+    private final ExampleBudget budget;
+    private final StringBuilder buffer = new StringBuilder(4096);
+    /**
+     * Number of elements and attributes of the current example written so far.
+     */
+    private int nodes;
 
     public TeamCityXMLExampleGenerator(Map<String, Model> definitions) {
-        this.definitions = definitions;
-        if (definitions == null) {
-            this.definitions = new HashMap<>();
-        }
+        this(ModelGraph.build(definitions));
     }
 
-    protected String modelToXml(String modelName, ModelImpl model) throws ParserConfigurationException, TransformerException {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-        Document doc = docBuilder.newDocument();
-
-        Element rootElement = doc.createElement(modelName);
-        serializeModelToElement(doc, modelName, model, 0, rootElement);
+    public TeamCityXMLExampleGenerator(ModelGraph modelGraph) {
+        this(modelGraph, ExampleBudget.DEFAULT);
+    }
 
-        return convertXmlDocumentToString(doc, rootElement);
+    public TeamCityXMLExampleGenerator(ModelGraph modelGraph, ExampleBudget budget) {
+        this.modelGraph = modelGraph;
+        this.budget = budget;
     }
 
-    protected String propertyToXml(Property property) throws ParserConfigurationException, TransformerException {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-        Document doc = docBuilder.newDocument();
+    protected String modelToXml(String modelName, ModelImpl model) {
+        buffer.setLength(0);
+        nodes = 0;
+        writeModelElement(modelName, modelName, model, 0, 0);
+        buffer.append(LINE_SEPARATOR);
+        return buffer.toString();
+    }
 
+    /**
+     * The model a property references is the model of the example: it is expanded regardless of the budget.
+     */
+    protected String propertyToXml(Property property) {
+        buffer.setLength(0);
+        nodes = 0;
         final String propName = property.getName();
-        Element rootElement = doc.createElement(propName);
-        serializePropertyToXml(doc, propName, property, 0, rootElement);
+        writeElement(propName, Collections.singletonMap(propName, property), -1, 0);
+        buffer.append(LINE_SEPARATOR);
+        return buffer.toString();
+    }
 
-        return convertXmlDocumentToString(doc, rootElement);
+    /**
+     * Writes the element of a model nested {@code level} levels deep, or a link to its docs if the budget of the
+     * example is used up.
+     */
+    protected void writeModelElement(String name, String modelName, ModelImpl model, int level, int indent) {
+        if (model == null) {
+            writeElement(name, Collections.emptyMap(), level, indent);
+        } else if (budget.isExhausted(level, nodes, buffer.length())) {
+            nodes++;
+            startElement(name, indent);
+            buffer.append('>');
+            appendEscaped(String.format("[[[%s...|%s.md]]]", modelName, camelize(modelName, true)), false);
+            endElement(name, -1);
+        } else {
+            writeElement(name, model.getProperties() == null ? Collections.emptyMap() : model.getProperties(), level, indent);
+        }
     }
 
-    private String convertXmlDocumentToString(Document doc, Element rootElement) throws TransformerException {
-        doc.appendChild(rootElement);
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "yes");
-
-        StringWriter writer = new StringWriter();
-        transformer.transform(
-                new DOMSource(doc), new StreamResult(writer)
-        );
-        return writer.toString();
+    /**
+     * Writes the element of a model nested {@code level} levels deep with the given properties: primitive properties
+     * as the attributes of the element, and referenced models as its child elements.
+     */
+    private void writeElement(String name, Map<String, Property> properties, int level, int indent) {
+        Map<String, String> attributes = new TreeMap<>();
+        boolean hasChildren = false;
+        for (Map.Entry<String, Property> entry : properties.entrySet()) {
+            hasChildren |= collectAttributes(entry.getKey(), entry.getValue(), attributes);
+        }
+        nodes += 1 + attributes.size();
+
+        startElement(name, indent);
+        attributes.forEach((attribute, value) -> {
+            buffer.append(' ').append(attribute).append("=\"");
+            appendEscaped(value, true);
+            buffer.append('"');
+        });
+        if (!hasChildren) {
+            buffer.append("/>");
+            return;
+        }
+        buffer.append('>');
+        properties.forEach((propertyName, property) -> writeChildElements(propertyName, property, level + 1, indent + 1));
+        endElement(name, indent);
     }
 
-    protected void serializeModelToElement(Document doc, String modelName, ModelImpl model, int depth, Element targetElement) {
-        if (model != null) {
-            if (depth >= MAX_MODEL_DEPTH) {
-                targetElement.appendChild(
-                        doc.createTextNode(
-                                String.format("[[[%s...|%s.md]]]", modelName, camelize(modelName, true))
-                        )
-                );
+    /**
+     * Adds the attribute of a primitive property, also of the items of an array property.
+     *
+     * @return whether the property is written as a child element instead
+     */
+    private boolean collectAttributes(String name, Property property, Map<String, String> attributes) {
+        while (property instanceof ArrayProperty) {
+            property = ((ArrayProperty) property).getItems();
+        }
+        if (property == null) {
+            return false;
+        }
+        if (property instanceof RefProperty) {
+            return true;
+        }
+        String attribute = name.replace("$", "");
+        checkName(attribute);
+        attributes.put(attribute, getExample(property));
+        return false;
+    }
+
+    private void writeChildElements(String name, Property property, int level, int indent) {
+        while (property instanceof ArrayProperty) {
+            property = ((ArrayProperty) property).getItems();
+        }
+        if (property instanceof RefProperty) {
+            String refModelName = ((RefProperty) property).getSimpleRef();
+            ModelImpl actualModel = (ModelImpl) modelGraph.getModel(refModelName);
+            writeModelElement(name, refModelName, actualModel, level, indent);
+        }
+    }
+
+    private void startElement(String name, int indent) {
+        checkName(name);
+        if (indent > 0) {
+            buffer.append(LINE_SEPARATOR);
+            for (int i = 0; i < indent; i++) {
+                buffer.append(INDENT);
             }
-            else {
-                if (model.getProperties() != null) {
-                    model.getProperties().forEach((propertyName, property) -> {
-                        serializePropertyToXml(doc, propertyName, property, depth + 1, targetElement);
-                    });
-                }
+        }
+        buffer.append('<').append(name);
+    }
+
+    /**
+     * @param indent the indentation of the element, or -1 if the closing tag follows its text on the same line
+     */
+    private void endElement(String name, int indent) {
+        if (indent >= 0) {
+            buffer.append(LINE_SEPARATOR);
+            for (int i = 0; i < indent; i++) {
+                buffer.append(INDENT);
             }
         }
+        buffer.append("</").append(name).append('>');
     }
 
-    protected void serializePropertyToXml(Document doc, String name, Property property, int depth, Element parentElement) {
-        try {
-            if (property != null) {
-                if (property instanceof ArrayProperty) {
-                    ArrayProperty p = (ArrayProperty) property;
-                    Property inner = p.getItems();
-                    serializePropertyToXml(doc, name, inner, depth + 1, parentElement);
-                }
-                else if (property instanceof RefProperty) {
-                    RefProperty ref = (RefProperty) property;
-                    String refModelName = ref.getSimpleRef();
-                    ModelImpl actualModel = (ModelImpl) definitions.get(refModelName);
-                    Element refElement = doc.createElement(name);
-                    serializeModelToElement(doc, refModelName, actualModel, depth + 1, refElement);
-                    parentElement.appendChild(refElement);
-                }
-                else {
-                    parentElement.setAttribute(
-                            name.replace("$", ""),
-                            getExample(property)
-                    );
-                }
+    private void appendEscaped(String value, boolean attribute) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    buffer.append("&amp;");
+                    break;
+                case '<':
+                    buffer.append("&lt;");
+                    break;
+                case '>':
+                    buffer.append("&gt;");
+                    break;
+                case '"':
+                    buffer.append(attribute ? "&quot;" : "\"");
+                    break;
+                case '\n':
+                    buffer.append(attribute ? "&#10;" : LINE_SEPARATOR);
+                    break;
+                case '\r':
+                    buffer.append("&#13;");
+                    break;
+                case '\t':
+                    buffer.append(attribute ? "&#9;" : "\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        buffer.append("&#").append((int) c).append(';');
+                    } else {
+                        buffer.append(c);
+                    }
             }
-        } catch (DOMException e) {
-            throw new DOMException(
-                    (short) 5,
-                    "INVALID_CHARACTER_ERR, name: "
-                            + name
-                            + ", example string: "
-                            + getExample(property)
-            );
         }
     }
 
+    /**
+     * Element and attribute names come from the spec, and must be valid XML names.
+     */
+    private static void checkName(String name) {
+        boolean valid = !name.isEmpty() && isNameStart(name.charAt(0));
+        for (int i = 1; valid && i < name.length(); i++) {
+            char c = name.charAt(i);
+            valid = isNameStart(c) || Character.isDigit(c) || c == '-' || c == '.' || c == 0xB7
+                    || Character.getType(c) == Character.NON_SPACING_MARK
+                    || Character.getType(c) == Character.COMBINING_SPACING_MARK;
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid XML name: " + name);
+        }
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == ':';
+    }
 
-            /**
-             * Get the example string value for the given Property.
-             * <p>
-             * If an example value was not provided in the specification, a default will be generated.
-             *
-             * @param property Property to get example string for
-             * @return Example String
-             */
+    /**
+     * Get the example string value for the given Property.
+     * <p>
+     * If an example value was not provided in the specification, a default will be generated.
+     *
+     * @param property Property to get example string for
+     * @return Example String
+     */
     protected String getExample(Property property) {
         if (!(property.getExample() == null || property.getExample() == "")) {
             return property.getExample().toString();
@@ -1,5 +1,7 @@
 package com.jetbrains.codegen.kotlin;
 
+import com.jetbrains.codegen.ModelSubpackageLayout;
+import com.jetbrains.codegen.Naming;
 import io.swagger.codegen.*;
 import io.swagger.codegen.languages.KotlinClientCodegen;
 import io.swagger.models.Model;
@@ -14,8 +16,26 @@ import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class TeamCityKotlinCodegen extends KotlinClientCodegen implements CodegenConfig {
+public class TeamCityKotlinCodegen extends KotlinClientCodegen implements CodegenConfig, ModelSubpackageLayout {
     String X_SUBPACKAGE = "x-subpackage";
+    /**
+     * Kotlin expression of the {@code java.lang.reflect.Type} of a property, which the generated JSON adapter of the
+     * model requests from Moshi.
+     */
+    static final String X_JSON_TYPE = "x-json-type";
+    /**
+     * Index of a property among the names the generated JSON adapter of the model selects from.
+     */
+    static final String X_JSON_INDEX = "x-json-index";
+    /**
+     * Item type of the list entity an operation returns, set for the operations which get streaming variants.
+     */
+    static final String X_LIST_ITEM_TYPE = "x-list-item-type";
+    /**
+     * JSON name of the items property of the list entity an operation returns.
+     */
+    static final String X_LIST_ITEMS_NAME = "x-list-items-name";
+    private final Naming naming = new Naming();
 
     public TeamCityKotlinCodegen() {
         super();
@@ -105,93 +125,128 @@ public class TeamCityKotlinCodegen extends KotlinClientCodegen implements Codege
         supportingFiles.add(new SupportingFile("infrastructure/ResponseExtensions.kt.mustache", infrastructureFolder, "ResponseExtensions.kt"));
         supportingFiles.add(new SupportingFile("infrastructure/Serializer.kt.mustache", infrastructureFolder, "Serializer.kt"));
         supportingFiles.add(new SupportingFile("infrastructure/Errors.kt.mustache", infrastructureFolder, "Errors.kt"));
+        supportingFiles.add(new SupportingFile("infrastructure/Coroutines.kt.mustache", infrastructureFolder, "Coroutines.kt"));
+        supportingFiles.add(new SupportingFile("infrastructure/ListItems.kt.mustache", infrastructureFolder, "ListItems.kt"));
 
         supportingFiles.add(new SupportingFile("infrastructure/ClientConfig.kt.mustache", infrastructureFolder, "ClientConfig.kt"));
+        supportingFiles.add(new SupportingFile("infrastructure/TransportConfig.kt.mustache", infrastructureFolder, "TransportConfig.kt"));
 
         supportingFiles.add(new SupportingFile("base/DataEntity.kt.mustache", baseFolder, "DataEntity.kt"));
         supportingFiles.add(new SupportingFile("base/ListEntity.kt.mustache", baseFolder, "ListEntity.kt"));
         supportingFiles.add(new SupportingFile("base/LocatorEntity.kt.mustache", baseFolder, "LocatorEntity.kt"));
         supportingFiles.add(new SupportingFile("base/PaginatedEntity.kt.mustache", baseFolder, "PaginatedEntity.kt"));
+
+        // names depend on the options processed above
+        naming.clear();
     }
 
     @Override
     public String sanitizeName(String name) {
-        // NOTE: performance wise, we should have written with 2 replaceAll to replace desired
-        // character with _ or empty character. Below aims to spell out different cases we've
-        // encountered so far and hopefully make it easier for others to add more special
-        // cases in the future.
-
-        // better error handling when map/array type is invalid
-        if (name == null) {
-            return "ERROR_UNKNOWN";
-        }
-
-        // if the name is just '$', map it to 'value' for the time being.
-        if ("$".equals(name)) {
-            return "value";
-        }
-
-        // input[] => input
-        name = name.replaceAll("\\[\\]", ""); // FIXME: a parameter should not be assigned. Also declare the methods parameters as 'final'.
-
-        // input[a][b] => input_a_b
-        name = name.replaceAll("\\[", "_");
-        name = name.replaceAll("\\]", "");
-
-        // input(a)(b) => input_a_b
-        name = name.replaceAll("\\(", "_");
-        name = name.replaceAll("\\)", "");
-
-        // input-name => input_name
-        name = name.replaceAll("-", "_");
-
-        // input name and age => input_name_and_age
-        name = name.replaceAll(" ", "_");
+        return Naming.sanitizeName(name);
+    }
 
-        return name;
+    @Override
+    public String toModelName(String name) {
+        return naming.toModelName(name, this::isReservedWord, modelNamePrefix, modelNameSuffix);
     }
 
+    @Override
+    public String toModelFilename(String name) {
+        return naming.toModelFilename(name, super::toModelFilename);
+    }
 
     @Override
-    public String toModelName(String name) {
-        name = sanitizeName(name); // FIXME: a parameter should not be assigned. Also declare the methods parameters as 'final'.
-        // remove dollar sign
-        name = name.replaceAll("\\$", "");
+    public String getSwaggerType(Property p) {
+        String swaggerType = super.getSwaggerType(p);
+        // This maps, for example, long -> kotlin.Long based on hashes in this type's constructor
+        return typeMapping.getOrDefault(swaggerType, swaggerType);
+    }
 
-        // model name cannot use reserved keyword, e.g. return
-        if (isReservedWord(name)) {
-            name = "model_" + name; // e.g. return => ModelReturn (after camelize)
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> postProcessModels(Map<String, Object> objs) {
+        Map<String, Object> result = super.postProcessModels(objs);
+        for (Object item : (List<Object>) result.get("models")) {
+            CodegenModel model = (CodegenModel) ((Map<String, Object>) item).get("model");
+            for (int i = 0; i < model.vars.size(); i++) {
+                CodegenProperty property = model.vars.get(i);
+                // the extensions are shared with the property of the spec
+                property.vendorExtensions = new HashMap<>(property.vendorExtensions);
+                property.vendorExtensions.put(X_JSON_INDEX, i);
+                property.vendorExtensions.put(X_JSON_TYPE, property.isEnum
+                        ? model.classname + "." + property.nameInCamelCase + "Enum::class.java"
+                        : toJsonType(property));
+            }
         }
+        return result;
+    }
 
-        // model name starts with number
-        if (name.matches("^\\d.*")) {
-            name = "model_" + name; // e.g. 200Response => Model200Response (after camelize)
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> postProcessOperationsWithModels(Map<String, Object> objs, List<Object> allModels) {
+        Map<String, Object> result = super.postProcessOperationsWithModels(objs, allModels);
+
+        Map<String, CodegenModel> models = new HashMap<>();
+        for (Object item : allModels) {
+            CodegenModel model = (CodegenModel) ((Map<String, Object>) item).get("model");
+            models.put(model.classname, model);
         }
 
-        if (!StringUtils.isEmpty(modelNamePrefix)) {
-            name = modelNamePrefix + "_" + name;
+        Map<String, Object> operations = (Map<String, Object>) result.get("operations");
+        for (CodegenOperation operation : (List<CodegenOperation>) operations.get("operation")) {
+            CodegenModel model = operation.returnType == null ? null : models.get(operation.returnType);
+            if (!"GET".equals(operation.httpMethod) || model == null || model.vendorExtensions.get("x-is-list") == null) {
+                continue;
+            }
+            CodegenProperty items = getItemsProperty(model);
+            if (items != null) {
+                // the extensions are shared with the operation of the spec
+                operation.vendorExtensions = new HashMap<>(operation.vendorExtensions);
+                operation.vendorExtensions.put(X_LIST_ITEM_TYPE, items.items.datatype);
+                operation.vendorExtensions.put(X_LIST_ITEMS_NAME, items.baseName);
+                if (model.vendorExtensions.get("x-is-paginated") != null) {
+                    operation.vendorExtensions.put("x-is-paginated", true);
+                }
+            }
         }
+        return result;
+    }
 
-        if (!StringUtils.isEmpty(modelNameSuffix)) {
-            name = name + "_" + modelNameSuffix;
+    /**
+     * @return the list property holding the items of a list entity, i.e. the one marked as the first container
+     * variable, or else the first list of models
+     */
+    private static CodegenProperty getItemsProperty(CodegenModel model) {
+        CodegenProperty first = null;
+        for (CodegenProperty property : model.vars) {
+            if (!property.isListContainer || property.items == null || property.items.complexType == null) {
+                continue;
+            }
+            if (property.vendorExtensions.get("x-is-first-container-var") != null) {
+                return property;
+            }
+            if (first == null) {
+                first = property;
+            }
         }
-
-        // camelize the model name
-        // phone_number => PhoneNumber
-        return camelize(name);
+        return first;
     }
 
-    @Override
-    public String getSwaggerType(Property p) {
-        String swaggerType = super.getSwaggerType(p);
-        // This maps, for example, long -> kotlin.Long based on hashes in this type's constructor
-        return typeMapping.getOrDefault(swaggerType, swaggerType);
+    private static String toJsonType(CodegenProperty property) {
+        if (property.isListContainer && property.items != null) {
+            return "com.squareup.moshi.Types.newParameterizedType(List::class.java, " + toJsonType(property.items) + ")";
+        }
+        if (property.isMapContainer && property.items != null) {
+            return "com.squareup.moshi.Types.newParameterizedType(Map::class.java, String::class.java, " + toJsonType(property.items) + ")";
+        }
+        // the boxed class, as properties are nullable
+        return property.datatype + "::class.javaObjectType";
     }
 
     public CodegenProperty fromProperty(String name, Property p) {
         CodegenProperty property = super.fromProperty(name, p);
         property.name = property.name.replace(".", "|");
-        property.nameInCamelCase = camelize(property.name.replace("$", ""), true);
+        property.nameInCamelCase = naming.camelize(property.name.replace("$", ""), true);
         property.name = property.name.replace("|", ".");
         property.baseName = property.baseName.replace("$", "\\$");
 
@@ -0,0 +1,215 @@
+package com.jetbrains.codegen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.swagger.models.Swagger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class SpecCacheTest {
+    private HttpServer server;
+    private File cacheDir;
+    private final Map<String, SpecResource> resources = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("spec-cache").toFile();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        FileUtils.deleteQuietly(cacheDir);
+    }
+
+    @Test
+    public void fetchesAndCachesSpec() throws IOException {
+        resources.put("/swagger.json", new SpecResource("first", "\"1\"", null));
+
+        Swagger swagger = newCache().read(url("/swagger.json"), null);
+
+        assertEquals("first", swagger.getInfo().getTitle());
+        assertEquals(Collections.singletonList("GET /swagger.json"), requests);
+    }
+
+    @Test
+    public void usesCachedSpecIfNotModifiedByETag() throws IOException {
+        resources.put("/swagger.json", new SpecResource("first", "\"1\"", null));
+        newCache().read(url("/swagger.json"), null);
+        // a 304 must not transfer the spec, so the new content is not seen
+        resources.put("/swagger.json", new SpecResource("second", "\"1\"", null));
+
+        Swagger swagger = newCache().read(url("/swagger.json"), null);
+
+        assertEquals("first", swagger.getInfo().getTitle());
+        assertEquals("GET /swagger.json If-None-Match=\"1\" -> 304", requests.get(1));
+    }
+
+    @Test
+    public void usesCachedSpecIfNotModifiedByLastModified() throws IOException {
+        String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+        resources.put("/swagger.json", new SpecResource("first", null, lastModified));
+        newCache().read(url("/swagger.json"), null);
+        resources.put("/swagger.json", new SpecResource("second", null, lastModified));
+
+        Swagger swagger = newCache().read(url("/swagger.json"), null);
+
+        assertEquals("first", swagger.getInfo().getTitle());
+        assertEquals("GET /swagger.json If-Modified-Since=" + lastModified + " -> 304", requests.get(1));
+    }
+
+    @Test
+    public void fetchesModifiedSpec() throws IOException {
+        resources.put("/swagger.json", new SpecResource("first", "\"1\"", null));
+        newCache().read(url("/swagger.json"), null);
+        resources.put("/swagger.json", new SpecResource("second", "\"2\"", null));
+
+        Swagger swagger = newCache().read(url("/swagger.json"), null);
+        assertEquals("second", swagger.getInfo().getTitle());
+        assertEquals("GET /swagger.json If-None-Match=\"1\"", requests.get(1));
+
+        swagger = newCache().read(url("/swagger.json"), null);
+        assertEquals("second", swagger.getInfo().getTitle());
+        assertEquals("GET /swagger.json If-None-Match=\"2\" -> 304", requests.get(2));
+    }
+
+    @Test
+    public void doesNotReuseSpecOfOtherUrl() throws IOException {
+        resources.put("/first.json", new SpecResource("first", "\"1\"", null));
+        resources.put("/second.json", new SpecResource("second", "\"1\"", null));
+        newCache().read(url("/first.json"), null);
+
+        Swagger swagger = newCache().read(url("/second.json"), null);
+
+        assertEquals("second", swagger.getInfo().getTitle());
+        assertEquals("GET /second.json", requests.get(1));
+    }
+
+    @Test
+    public void failsIfServerCannotBeReached() throws IOException {
+        resources.put("/swagger.json", new SpecResource("first", "\"1\"", null));
+        String url = url("/swagger.json");
+        newCache().read(url, null);
+        server.stop(0);
+        server = null;
+
+        try {
+            newCache().read(url, null);
+            fail("Expected the read to fail without the offline fallback");
+        } catch (IOException expected) {
+            // the cached spec is only used offline when enabled
+        }
+
+        SpecCache cache = newCache();
+        cache.setOfflineFallback(true);
+        assertEquals("first", cache.read(url, null).getInfo().getTitle());
+    }
+
+    @Test
+    public void failsOnServerError() throws IOException {
+        try {
+            newCache().read(url("/missing.json"), null);
+            fail("Expected the read to fail on HTTP 404");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("HTTP 404"));
+        }
+    }
+
+    private SpecCache newCache() {
+        SpecCache cache = new SpecCache(cacheDir);
+        cache.setTimeouts(5_000, 5_000);
+        return cache;
+    }
+
+    private String url(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        StringBuilder request = new StringBuilder(exchange.getRequestMethod()).append(' ').append(path);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifNoneMatch != null) {
+            request.append(" If-None-Match=").append(ifNoneMatch);
+        }
+        if (ifModifiedSince != null) {
+            request.append(" If-Modified-Since=").append(ifModifiedSince);
+        }
+
+        SpecResource resource = resources.get(path);
+        boolean notModified = resource != null && (resource.etag != null
+                ? resource.etag.equals(ifNoneMatch)
+                : resource.lastModified != null && resource.lastModified.equals(ifModifiedSince));
+        if (notModified) {
+            request.append(" -> 304");
+        }
+        // recorded before responding, the client may check the requests as soon as it has the response
+        requests.add(request.toString());
+
+        try {
+            if (resource == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (resource.etag != null) {
+                exchange.getResponseHeaders().set("ETag", resource.etag);
+            }
+            if (resource.lastModified != null) {
+                exchange.getResponseHeaders().set("Last-Modified", resource.lastModified);
+            }
+            if (notModified) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = resource.getContent();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static final class SpecResource {
+        final String title;
+        final String etag;
+        final String lastModified;
+
+        SpecResource(String title, String etag, String lastModified) {
+            this.title = title;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        byte[] getContent() {
+            return ("{\"swagger\":\"2.0\",\"info\":{\"title\":\"" + title + "\",\"version\":\"1\"},\"paths\":{}}")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}